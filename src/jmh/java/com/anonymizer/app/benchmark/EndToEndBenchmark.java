@@ -0,0 +1,169 @@
+package com.anonymizer.app.benchmark;
+
+import com.anonymizer.app.config.ConfigLoader;
+import com.anonymizer.app.db.ConnectionFactory;
+import com.anonymizer.app.db.DatabaseService;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * 在嵌入式H2数据库上测试 {@link DatabaseService#anonymizeAllTables()} 的端到端吞吐量
+ *
+ * 不是JMH基准测试：与实际任务一样，一次运行只生成一次合成数据并脱敏一次，只统计脱敏阶段的每秒行数、
+ * 堆内存峰值和GC时间。参数为 {@code key=value} 形式，下面的 {@code bench.*} 参数控制测试本身，
+ * 其他参数覆盖脱敏配置（例如 {@code parallel.workers=8} 或 {@code write.mode=staging}）。
+ * H2方言（{@link H2Dialect}）在启动时注册为 h2 类型，发布的程序不包含它。
+ *
+ * <ul>
+ *   <li>{@code bench.rows} customers 表的行数，orders 和 transactions 按它的倍数生成（默认100000）</li>
+ *   <li>{@code bench.mode} H2的兼容模式，MySQL 或 PostgreSQL（默认MySQL）</li>
+ *   <li>{@code bench.dir} 数据库目录，默认使用临时目录并在结束后删除</li>
+ *   <li>{@code bench.generatorThreads} 生成数据的线程数（默认CPU核数）</li>
+ * </ul>
+ *
+ * 运行方式：{@code java -cp target/benchmarks.jar com.anonymizer.app.benchmark.EndToEndBenchmark bench.rows=1000000}
+ */
+public final class EndToEndBenchmark {
+
+    private EndToEndBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties arguments = new Properties();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            arguments.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        ConnectionFactory.registerDialect("h2", "org.h2.Driver", H2Dialect::new);
+
+        int customers = Integer.parseInt(arguments.getProperty("bench.rows", "100000"));
+        String mode = arguments.getProperty("bench.mode", "MySQL");
+        int generatorThreads = Integer.parseInt(arguments.getProperty("bench.generatorThreads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean temporary = !arguments.containsKey("bench.dir");
+        Path dir = temporary
+                ? Files.createTempDirectory("anonymizer-bench")
+                : Paths.get(arguments.getProperty("bench.dir"));
+
+        String url = "jdbc:h2:" + dir.toAbsolutePath().resolve("bench") + ";MODE=" + mode
+                + ";DATABASE_TO_LOWER=TRUE;LOCK_TIMEOUT=60000";
+        try {
+            SyntheticDataGenerator generator = new SyntheticDataGenerator(url, generatorThreads);
+            generator.createTables();
+            long loadStart = System.nanoTime();
+            long rows = generator.populate(customers);
+            double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+            System.out.printf("Loaded %,d rows in %.1f s (%,.0f rows/s, %d threads)%n",
+                    rows, loadSeconds, rows / loadSeconds, generatorThreads);
+
+            Properties config = anonymizerConfig(url, arguments);
+            ConfigLoader configLoader = new ConfigLoader(config);
+            DatabaseService service = new DatabaseService(configLoader, config);
+
+            System.gc();
+            long gcBefore = gcMillis();
+            resetHeapPeaks();
+            long start = System.nanoTime();
+            service.connect();
+            try {
+                service.anonymizeAllTables();
+            } finally {
+                service.disconnect();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long gcTime = gcMillis() - gcBefore;
+
+            System.out.printf("Anonymized %,d rows in %.2f s: %,.0f rows/s%n", rows, seconds, rows / seconds);
+            System.out.printf("Heap peak: %,d MB, GC time: %,d ms (%.1f%%)%n",
+                    heapPeakBytes() >> 20, gcTime, gcTime / (seconds * 10));
+        } finally {
+            if (temporary) {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static Properties anonymizerConfig(String url, Properties arguments) {
+        Properties config = new Properties();
+        config.setProperty("database.type", "h2");
+        config.setProperty("database.url", url);
+        config.setProperty("database.username", SyntheticDataGenerator.USER);
+        config.setProperty("database.password", "");
+        config.setProperty("tables", "customers,orders,transactions");
+        config.setProperty("customers.columns", "bank_card,id_card,name,mobile,phone,email,amount");
+        config.setProperty("orders.columns", "customer_name,shipping_address,phone");
+        config.setProperty("transactions.columns", "card_number,amount,description");
+        config.setProperty("column.type.customers.bank_card", "BANK_CARD");
+        config.setProperty("column.type.customers.id_card", "ID_CARD");
+        config.setProperty("column.type.customers.name", "NAME");
+        config.setProperty("column.type.customers.mobile", "MOBILE");
+        config.setProperty("column.type.customers.phone", "PHONE");
+        config.setProperty("column.type.customers.email", "EMAIL");
+        config.setProperty("column.type.customers.amount", "AMOUNT");
+        config.setProperty("column.type.orders.customer_name", "NAME");
+        config.setProperty("column.type.orders.shipping_address", "TEXT");
+        config.setProperty("column.type.orders.phone", "PHONE");
+        config.setProperty("column.type.transactions.card_number", "BANK_CARD");
+        config.setProperty("column.type.transactions.amount", "AMOUNT");
+        config.setProperty("column.type.transactions.description", "TEXT");
+        config.setProperty("parallel.workers", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        config.setProperty("parallel.chunks", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        config.setProperty("checkpoint.enabled", "false");
+
+        for (String key : arguments.stringPropertyNames()) {
+            if (!key.startsWith("bench.")) {
+                config.setProperty(key, arguments.getProperty(key));
+            }
+        }
+        return config;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * 各内存池峰值之和；各池达到峰值的时间不同，因此这是一个上限
+     */
+    private static long heapPeakBytes() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.anonymizer.app.benchmark;
+
+import com.anonymizer.app.db.DatabaseDialect;
+import com.anonymizer.app.db.RowAddress;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * H2数据库方言实现，用于嵌入式数据库上的端到端基准测试
+ *
+ * 只在 benchmark profile 中编译，H2驱动也只在该 profile 的类路径中。{@link EndToEndBenchmark} 启动时通过
+ * {@link com.anonymizer.app.db.ConnectionFactory#registerDialect} 把它注册为 h2 类型，发布的程序不支持H2。
+ * H2没有可用的随机表达式下推和直方图统计，这两项总是返回null。
+ */
+class H2Dialect implements DatabaseDialect {
+
+    @Override
+    public String getTableStructureQuery(String tableName) {
+        return "SELECT * FROM " + tableName + " LIMIT 1";
+    }
+
+    @Override
+    public String getSelectAllQuery(String tableName) {
+        return "SELECT * FROM " + tableName;
+    }
+
+    @Override
+    public String getSelectQuery(String tableName, String[] columns, RowAddress rowAddress, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT ").append(rowAddress.getSelectList());
+        for (String column : columns) {
+            query.append(", ").append(column);
+        }
+        query.append(" FROM ").append(tableName);
+
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        if (rowAddress.getOrderBy() != null) {
+            query.append(" ORDER BY ").append(rowAddress.getOrderBy());
+        }
+        return query.toString();
+    }
+
+    @Override
+    public PreparedStatement prepareStreamingQuery(Connection connection, String sql, int fetchSize) throws SQLException {
+        // H2把超过 MAX_MEMORY_ROWS 的结果集缓存到临时文件，fetchSize 控制每次返回给客户端的行数
+        PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+
+    @Override
+    public String getKeyRangeQuery(String tableName, String primaryKeyColumn) {
+        return "SELECT MIN(" + primaryKeyColumn + "), MAX(" + primaryKeyColumn + ") FROM " + tableName;
+    }
+
+    @Override
+    public String getKeyHistogramQuery(String tableName, String primaryKeyColumn) {
+        // H2不保存列值分布统计，按最小值和最大值均匀切分
+        return null;
+    }
+
+    @Override
+    public String getUpdateQuery(String tableName, String[] columns, RowAddress rowAddress) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" SET ");
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns[i]).append(" = ?");
+        }
+
+        query.append(" WHERE ").append(rowAddress.getMatchCondition());
+        return query.toString();
+    }
+
+    @Override
+    public String getInsertQuery(String tableName, String[] columns) {
+        StringBuilder query = new StringBuilder("INSERT INTO ").append(tableName)
+                .append(" (").append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i > 0 ? ", ?" : "?");
+        }
+        return query.append(")").toString();
+    }
+
+    @Override
+    public String getTruncateQuery(String tableName) {
+        return "TRUNCATE TABLE " + tableName;
+    }
+
+    @Override
+    public String getAnonymizationExpression(String ruleType, String column, int maxLength) {
+        // 不下推，所有规则在JDBC中处理
+        return null;
+    }
+
+    @Override
+    public String getExpressionUpdateQuery(String tableName, String[] columns, String[] expressions, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" SET ");
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns[i]).append(" = ").append(expressions[i]);
+        }
+
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        return query.toString();
+    }
+
+    @Override
+    public void prepareStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                    RowAddress rowAddress) {
+        // 临时表只存在于创建它的会话中，由每个工作单元自己创建
+    }
+
+    @Override
+    public void createStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                   RowAddress rowAddress) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE LOCAL TEMPORARY TABLE " + stagingTable + " AS SELECT " +
+                    joinColumns(rowAddress.getStagingSelectList(), columns) + " FROM " + tableName + " WITH NO DATA");
+            // CREATE TABLE AS 生成的列都允许为空，加主键前先设置非空
+            String[] addressColumns = rowAddress.getStagingColumns();
+            for (String column : addressColumns) {
+                stmt.executeUpdate("ALTER TABLE " + stagingTable + " ALTER COLUMN " + column + " SET NOT NULL");
+            }
+            stmt.executeUpdate("ALTER TABLE " + stagingTable + " ADD PRIMARY KEY (" + String.join(", ", addressColumns) + ")");
+        }
+    }
+
+    @Override
+    public void loadStagingTable(Connection connection, String stagingTable, String[] columns, List<Object[]> rows)
+            throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(getInsertQuery(stagingTable, columns))) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    pstmt.setObject(i + 1, row[i]);
+                }
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    @Override
+    public String getStagingUpdateQuery(String tableName, String stagingTable, String[] columns, RowAddress rowAddress) {
+        StringBuilder query = new StringBuilder();
+        query.append("MERGE INTO ").append(tableName).append(" target USING ").append(stagingTable).append(" staging ON (")
+             .append(rowAddress.getJoinCondition("target", "staging"))
+             .append(") WHEN MATCHED THEN UPDATE SET ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append("target.").append(columns[i]).append(" = staging.").append(columns[i]);
+        }
+        return query.toString();
+    }
+
+    @Override
+    public void dropStagingTable(Connection connection, String stagingTable) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + stagingTable);
+        }
+    }
+
+    @Override
+    public String getPrimaryKeyQuery(String tableName) {
+        return "SELECT kcu.COLUMN_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS tc " +
+               "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE kcu ON tc.CONSTRAINT_SCHEMA = kcu.CONSTRAINT_SCHEMA " +
+               "AND tc.CONSTRAINT_NAME = kcu.CONSTRAINT_NAME " +
+               "WHERE tc.CONSTRAINT_TYPE = 'PRIMARY KEY' AND tc.TABLE_SCHEMA = SCHEMA() " +
+               "AND UPPER(tc.TABLE_NAME) = UPPER('" + tableName + "') " +
+               "ORDER BY kcu.ORDINAL_POSITION";
+    }
+
+    @Override
+    public String getCatalogQuery(List<String> tableNames) {
+        return "SELECT c.TABLE_NAME, c.COLUMN_NAME, c.ORDINAL_POSITION, k.ORDINAL_POSITION " +
+               "FROM INFORMATION_SCHEMA.COLUMNS c " +
+               "LEFT JOIN (SELECT kcu.TABLE_SCHEMA, kcu.TABLE_NAME, kcu.COLUMN_NAME, kcu.ORDINAL_POSITION " +
+               "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS tc JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE kcu " +
+               "ON tc.CONSTRAINT_SCHEMA = kcu.CONSTRAINT_SCHEMA AND tc.CONSTRAINT_NAME = kcu.CONSTRAINT_NAME " +
+               "WHERE tc.CONSTRAINT_TYPE = 'PRIMARY KEY') k ON k.TABLE_SCHEMA = c.TABLE_SCHEMA " +
+               "AND k.TABLE_NAME = c.TABLE_NAME AND k.COLUMN_NAME = c.COLUMN_NAME " +
+               "WHERE c.TABLE_SCHEMA = SCHEMA() AND UPPER(c.TABLE_NAME) IN (" +
+               toSqlList(tableNames).toUpperCase(Locale.ROOT) + ")";
+    }
+
+    @Override
+    public String getCatalogVersionQuery(List<String> tableNames) {
+        // H2不记录DDL时间，嵌入式数据库的目录查询本身很快，不使用缓存
+        return null;
+    }
+
+    @Override
+    public RowAddress getPhysicalRowAddress() {
+        // _ROWID_ 是行在表的主索引中的键，更新时不变
+        return RowAddress.physical("_ROWID_", "_ROWID_", "%s", null);
+    }
+
+    @Override
+    public Properties getStatementCacheProperties(int cacheSize) {
+        // H2在会话中自动缓存解析过的语句（QUERY_CACHE_SIZE）
+        return new Properties();
+    }
+
+    @Override
+    public String getBatchRewriteProperty() {
+        // 嵌入式数据库没有网络往返，不需要改写
+        return null;
+    }
+
+    @Override
+    public boolean isBatchRewriteEnabled(Connection connection) {
+        return true;
+    }
+
+    private static String joinColumns(String addressList, String[] columns) {
+        StringBuilder list = new StringBuilder(addressList);
+        for (String column : columns) {
+            list.append(", ").append(column);
+        }
+        return list.toString();
+    }
+
+    /**
+     * 把表名转换为SQL字符串字面量的列表（与 SchemaCatalog 中的同名方法相同，该类不对基准测试开放）
+     */
+    private static String toSqlList(List<String> tableNames) {
+        StringBuilder list = new StringBuilder();
+        for (String tableName : tableNames) {
+            if (list.length() > 0) {
+                list.append(", ");
+            }
+            list.append('\'').append(tableName.replace("'", "''")).append('\'');
+        }
+        return list.toString();
+    }
+}
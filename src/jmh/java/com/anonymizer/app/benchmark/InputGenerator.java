@@ -0,0 +1,79 @@
+package com.anonymizer.app.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * 按指定的文字类型和长度生成基准测试的输入
+ *
+ * 数字类规则（卡号、电话、金额）在ASCII类型下使用以数字为主的输入，与生产环境中的数据一致；
+ * 其他文字类型用非预期的文本测试同样的规则。
+ */
+final class InputGenerator {
+    private static final String ASCII_LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private InputGenerator() {
+    }
+
+    static String generate(String ruleType, String script, int length, SplittableRandom random) {
+        if ("ASCII".equals(script)) {
+            switch (ruleType) {
+                case "BANK_CARD":
+                case "ID_CARD":
+                case "MOBILE":
+                case "PHONE":
+                    return digits(length, random);
+                case "AMOUNT":
+                    return amount(length, random);
+                case "EMAIL":
+                    return email(length, random);
+                default:
+                    break;
+            }
+        }
+        return text(script, length, random);
+    }
+
+    private static String digits(int length, SplittableRandom random) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append((char) ('0' + random.nextInt(10)));
+        }
+        return value.toString();
+    }
+
+    private static String amount(int length, SplittableRandom random) {
+        int integerDigits = Math.max(1, Math.min(length - 3, 15));
+        return digits(integerDigits, random) + "." + digits(2, random);
+    }
+
+    private static String email(int length, SplittableRandom random) {
+        int local = Math.max(1, length / 2);
+        int domain = Math.max(1, length - local - 5);
+        return text("ASCII", local, random) + "@" + text("ASCII", domain, random) + ".com";
+    }
+
+    private static String text(String script, int length, SplittableRandom random) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            String charScript = "MIXED".equals(script)
+                    ? new String[] {"ASCII", "CJK", "HANGUL"}[random.nextInt(3)]
+                    : script;
+            value.append(character(charScript, random));
+        }
+        return value.toString();
+    }
+
+    private static char character(String script, SplittableRandom random) {
+        switch (script) {
+            case "CJK":
+                return (char) random.nextInt(0x4E00, 0x9FA6);
+            case "HANGUL":
+                return (char) random.nextInt(0xAC00, 0xD7A4);
+            case "ASCII":
+            default:
+                return random.nextInt(4) == 0
+                        ? (char) ('0' + random.nextInt(10))
+                        : ASCII_LETTERS.charAt(random.nextInt(ASCII_LETTERS.length()));
+        }
+    }
+}
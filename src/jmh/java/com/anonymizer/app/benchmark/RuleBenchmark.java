@@ -0,0 +1,116 @@
+package com.anonymizer.app.benchmark;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+import com.anonymizer.app.anonymizer.AnonymizationRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试 {@link AnonymizationRules} 中每个规则在不同输入下的吞吐量
+ *
+ * 每次调用从预先生成的输入池中轮流取一个值脱敏，每种参数组合的输入构成（文字类型、长度、null和空值的比例）
+ * 固定，且不包含生成输入的开销。通过 {@link #main(String[])} 运行时默认启用GC分析器（每次操作的分配速率），
+ * 也可以运行 {@code java -jar target/benchmarks.jar RuleBenchmark -prof gc}。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleBenchmark {
+    private static final int POOL_SIZE = 4096;
+
+    @Param({"BANK_CARD", "ID_CARD", "NAME", "MOBILE", "PHONE", "EMAIL", "AMOUNT", "TEXT", "DEFAULT"})
+    public String ruleType;
+
+    @Param({"ASCII", "CJK", "HANGUL", "MIXED"})
+    public String script;
+
+    @Param({"11", "64", "512"})
+    public int length;
+
+    /** null或空值在输入中所占的比例，两者各占一半 */
+    @Param({"0.0", "0.2"})
+    public double emptyRatio;
+
+    private AnonymizationRule rule;
+    private String[] inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rule = AnonymizationRules.getRule(ruleType);
+        SplittableRandom random = new SplittableRandom(42);
+        inputs = new String[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            double roll = random.nextDouble();
+            if (roll < emptyRatio / 2) {
+                inputs[i] = null;
+            } else if (roll < emptyRatio) {
+                inputs[i] = "";
+            } else {
+                inputs[i] = InputGenerator.generate(ruleType, script, length, random);
+            }
+        }
+    }
+
+    /**
+     * 每个线程在共享输入池中的读取位置
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            int index = next;
+            next = (index + 1) & (POOL_SIZE - 1);
+            return index;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String singleThread(Cursor cursor) {
+        return rule.anonymize(inputs[cursor.next()]);
+    }
+
+    /**
+     * 在所有CPU核上执行同样的测试，暴露随机数源等共享状态上的竞争
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String allThreads(Cursor cursor) {
+        return rule.anonymize(inputs[cursor.next()]);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        options.addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(RuleBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
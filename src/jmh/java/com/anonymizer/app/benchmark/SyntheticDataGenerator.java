@@ -0,0 +1,209 @@
+package com.anonymizer.app.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 按 sample_database.sql 创建表，并行填充合成数据
+ *
+ * orders 和 transactions 的行数分别为 customers 的2倍和3倍。每个生成线程负责一段连续的主键，使用自己的连接
+ * 和以该段为种子的随机数流，行数和线程数相同时生成的数据相同。不创建外键：脱敏程序不使用外键，
+ * 而检查外键会占用大部分加载时间。
+ */
+final class SyntheticDataGenerator {
+    static final int ORDERS_PER_CUSTOMER = 2;
+    static final int TRANSACTIONS_PER_CUSTOMER = 3;
+    static final String USER = "sa";
+
+    private static final int INSERT_BATCH = 1000;
+    private static final int COMMIT_INTERVAL = 50_000;
+    private static final long EPOCH_2020 = 1_577_836_800_000L;
+    private static final String[] SURNAMES = {"王", "李", "张", "刘", "陈", "杨", "赵", "黄", "周", "吴"};
+    private static final String[] CITIES = {"北京市", "上海市", "广州市", "深圳市", "杭州市", "成都市"};
+    private static final String[] STATUSES = {"SUCCESS", "PENDING", "FAILED", "REFUNDED"};
+
+    private final String url;
+    private final int threads;
+
+    SyntheticDataGenerator(String url, int threads) {
+        this.url = url;
+        this.threads = Math.max(1, threads);
+    }
+
+    void createTables() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, USER, "");
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS transactions");
+            stmt.executeUpdate("DROP TABLE IF EXISTS orders");
+            stmt.executeUpdate("DROP TABLE IF EXISTS customers");
+            stmt.executeUpdate("CREATE TABLE customers (id INT PRIMARY KEY, name VARCHAR(100), " +
+                    "id_card VARCHAR(18), bank_card VARCHAR(19), mobile VARCHAR(20), phone VARCHAR(20), " +
+                    "email VARCHAR(100), amount DECIMAL(10,2))");
+            stmt.executeUpdate("CREATE TABLE orders (order_id INT PRIMARY KEY, customer_id INT, " +
+                    "customer_name VARCHAR(100), shipping_address VARCHAR(200), phone VARCHAR(20), " +
+                    "order_date TIMESTAMP, total_amount DECIMAL(10,2))");
+            stmt.executeUpdate("CREATE TABLE transactions (transaction_id INT PRIMARY KEY, order_id INT, " +
+                    "card_number VARCHAR(19), amount DECIMAL(10,2), transaction_date TIMESTAMP, " +
+                    "description VARCHAR(200), status VARCHAR(20))");
+        }
+    }
+
+    /**
+     * @param customers customers 表的行数，其他表按它的倍数生成
+     * @return 插入的总行数
+     */
+    long populate(int customers) throws SQLException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> parts = new ArrayList<>();
+            submitSlices(pool, parts, customers, this::fillCustomers);
+            submitSlices(pool, parts, customers * ORDERS_PER_CUSTOMER,
+                    (connection, from, to) -> fillOrders(connection, from, to, customers));
+            submitSlices(pool, parts, customers * TRANSACTIONS_PER_CUSTOMER,
+                    (connection, from, to) -> fillTransactions(connection, from, to, customers * ORDERS_PER_CUSTOMER));
+            long rows = 0;
+            for (Future<Long> part : parts) {
+                rows += part.get();
+            }
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while generating data", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException
+                    ? (SQLException) e.getCause()
+                    : new SQLException("Data generation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SliceFiller {
+        long fill(Connection connection, int fromId, int toId) throws SQLException;
+    }
+
+    private void submitSlices(ExecutorService pool, List<Future<Long>> parts, int rows, SliceFiller filler) {
+        int sliceSize = (rows + threads - 1) / threads;
+        for (int from = 1; from <= rows; from += sliceSize) {
+            int fromId = from;
+            int toId = Math.min(rows, from + sliceSize - 1);
+            parts.add(pool.submit(() -> {
+                try (Connection connection = DriverManager.getConnection(url, USER, "")) {
+                    connection.setAutoCommit(false);
+                    long inserted = filler.fill(connection, fromId, toId);
+                    connection.commit();
+                    return inserted;
+                }
+            }));
+        }
+    }
+
+    private long fillCustomers(Connection connection, int fromId, int toId) throws SQLException {
+        SplittableRandom random = new SplittableRandom(fromId * 31L + 1);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO customers (id, name, id_card, bank_card, mobile, phone, email, amount) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = fromId; id <= toId; id++) {
+                pstmt.setInt(1, id);
+                pstmt.setString(2, name(random));
+                pstmt.setString(3, digits(17, random) + (random.nextInt(11) == 10 ? "X" : digits(1, random)));
+                pstmt.setString(4, "62" + digits(14 + random.nextInt(4), random));
+                pstmt.setString(5, "1" + (3 + random.nextInt(7)) + digits(9, random));
+                pstmt.setString(6, "0" + digits(2, random) + "-" + digits(8, random));
+                pstmt.setString(7, "user" + id + "@example.com");
+                pstmt.setBigDecimal(8, amount(random));
+                addBatch(connection, pstmt, id - fromId + 1);
+            }
+            pstmt.executeBatch();
+        }
+        return toId - fromId + 1;
+    }
+
+    private long fillOrders(Connection connection, int fromId, int toId, int customers) throws SQLException {
+        SplittableRandom random = new SplittableRandom(fromId * 37L + 2);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO orders (order_id, customer_id, customer_name, shipping_address, phone, order_date, " +
+                "total_amount) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = fromId; id <= toId; id++) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, 1 + random.nextInt(customers));
+                pstmt.setString(3, name(random));
+                pstmt.setString(4, CITIES[random.nextInt(CITIES.length)] + "某某路" + (1 + random.nextInt(999)) + "号");
+                pstmt.setString(5, "1" + (3 + random.nextInt(7)) + digits(9, random));
+                pstmt.setTimestamp(6, timestamp(random));
+                pstmt.setBigDecimal(7, amount(random));
+                addBatch(connection, pstmt, id - fromId + 1);
+            }
+            pstmt.executeBatch();
+        }
+        return toId - fromId + 1;
+    }
+
+    private long fillTransactions(Connection connection, int fromId, int toId, int orders) throws SQLException {
+        SplittableRandom random = new SplittableRandom(fromId * 41L + 3);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO transactions (transaction_id, order_id, card_number, amount, transaction_date, " +
+                "description, status) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = fromId; id <= toId; id++) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, 1 + random.nextInt(orders));
+                pstmt.setString(3, "62" + digits(14 + random.nextInt(4), random));
+                pstmt.setBigDecimal(4, amount(random));
+                pstmt.setTimestamp(5, timestamp(random));
+                pstmt.setString(6, "订单" + (1 + random.nextInt(orders)) + "付款");
+                pstmt.setString(7, STATUSES[random.nextInt(STATUSES.length)]);
+                addBatch(connection, pstmt, id - fromId + 1);
+            }
+            pstmt.executeBatch();
+        }
+        return toId - fromId + 1;
+    }
+
+    private static void addBatch(Connection connection, PreparedStatement pstmt, int rowsInSlice) throws SQLException {
+        pstmt.addBatch();
+        if (rowsInSlice % INSERT_BATCH == 0) {
+            pstmt.executeBatch();
+        }
+        if (rowsInSlice % COMMIT_INTERVAL == 0) {
+            connection.commit();
+        }
+    }
+
+    private static String name(SplittableRandom random) {
+        StringBuilder name = new StringBuilder(SURNAMES[random.nextInt(SURNAMES.length)]);
+        int given = 1 + random.nextInt(2);
+        for (int i = 0; i < given; i++) {
+            name.append((char) random.nextInt(0x4E00, 0x9FA6));
+        }
+        return name.toString();
+    }
+
+    private static String digits(int length, SplittableRandom random) {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++) {
+            digits[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    private static BigDecimal amount(SplittableRandom random) {
+        return BigDecimal.valueOf(random.nextLong(1, 10_000_000), 2);
+    }
+
+    private static Timestamp timestamp(SplittableRandom random) {
+        return new Timestamp(EPOCH_2020 + random.nextLong(5L * 365 * 24 * 3600 * 1000));
+    }
+}
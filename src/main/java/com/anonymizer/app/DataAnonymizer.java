@@ -1,11 +1,16 @@
 package com.anonymizer.app;
 
 import com.anonymizer.app.config.ConfigLoader;
+import com.anonymizer.app.config.RunMode;
+import com.anonymizer.app.db.CopyService;
 import com.anonymizer.app.db.DatabaseService;
+import com.anonymizer.app.export.DumpAnonymizer;
+import com.anonymizer.app.export.ExportService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 
 /**
  * 数据脱敏应用程序主类
@@ -20,14 +25,37 @@ public class DataAnonymizer {
             // 加载配置
             ConfigLoader configLoader = new ConfigLoader();
             
+            if (configLoader.getRunMode() == RunMode.COPY) {
+                // 复制模式：脱敏后写入目标库，源库保持不变
+                CopyService copyService = new CopyService(configLoader, configLoader.getProperties());
+                copyService.copyAllTables();
+                logger.info("Data copy completed successfully");
+                return;
+            }
+            
+            if (configLoader.getRunMode() == RunMode.DUMP) {
+                // 离线模式：直接改写已有的转储文件，不连接数据库
+                new DumpAnonymizer(configLoader).anonymizeDump();
+                logger.info("Dump anonymization completed successfully");
+                return;
+            }
+            
+            if (configLoader.getRunMode() == RunMode.EXPORT) {
+                // 导出模式：脱敏后写成转储文件，源库保持不变
+                ExportService exportService = new ExportService(configLoader, configLoader.getProperties());
+                exportService.exportAllTables();
+                logger.info("Data export completed successfully");
+                return;
+            }
+            
             // 初始化数据库服务
             DatabaseService dbService = new DatabaseService(configLoader, configLoader.getProperties());
             
             // 连接数据库
             dbService.connect();
             
-            // 对所有配置的表进行脱敏
-            dbService.anonymizeAllTables();
+            // 对所有配置的表进行脱敏，--resume 时从检查点继续
+            dbService.anonymizeAllTables(Arrays.asList(args).contains("--resume"));
             
             // 断开数据库连接
             dbService.disconnect();
@@ -35,8 +63,11 @@ public class DataAnonymizer {
             logger.info("Data anonymization completed successfully");
         } catch (SQLException e) {
             logger.error("Database error: {}", e.getMessage(), e);
+            // 以非零状态退出，调度系统据此判断脱敏失败
+            System.exit(1);
         } catch (Exception e) {
             logger.error("Error: {}", e.getMessage(), e);
+            System.exit(1);
         }
     }
 } 
\ No newline at end of file
@@ -5,8 +5,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
-import java.util.regex.Pattern;
 
 /**
  * Factory class for creating anonymization rules
@@ -25,7 +23,25 @@ public class AnonymizationRules {
     public static final String TEXT = "TEXT";
     
     private static final Map<String, AnonymizationRule> rules = new HashMap<>();
-    private static final Random random = new Random();
+    
+    // Character classes, precomputed for every UTF-16 code unit.
+    // Bits 0-1 hold the basic class, bits 2-3 the script class used by script-preserving rules.
+    private static final int CLASS_OTHER = 0;
+    private static final int CLASS_DIGIT = 1;
+    private static final int CLASS_UPPER = 2;
+    private static final int CLASS_LOWER = 3;
+    private static final int BASIC_MASK = 0x3;
+    private static final int SCRIPT_NONE = 0;
+    private static final int SCRIPT_CJK = 1 << 2;
+    private static final int SCRIPT_KANA = 2 << 2;
+    private static final int SCRIPT_HANGUL = 3 << 2;
+    private static final int SCRIPT_MASK = 0x3 << 2;
+    private static final byte[] CHAR_CLASSES = buildCharClasses();
+    
+    // Kernel modes: which character classes are replaced
+    private static final int REPLACE_DIGITS = 1;
+    private static final int REPLACE_LETTERS = 2;
+    private static final int REPLACE_SCRIPTS = 4;
     
     static {
         // Initialize rules
@@ -55,166 +71,197 @@ public class AnonymizationRules {
     }
     
     /**
-     * Generate a random digit
-     */
-    private static char getRandomDigit() {
-        return (char) ('0' + random.nextInt(10));
-    }
-    
-    /**
-     * Generate a random lowercase letter
-     */
-    private static char getRandomLowercase() {
-        return (char) ('a' + random.nextInt(26));
-    }
-    
-    /**
-     * Generate a random uppercase letter
-     */
-    private static char getRandomUppercase() {
-        return (char) ('A' + random.nextInt(26));
-    }
-    
-    /**
-     * Generate a random letter (preserving case)
+     * Check whether a dedicated rule exists for the given type
+     * 
+     * @param type The rule type
+     * @return true if the type is known, false if it falls back to the default rule
      */
-    private static char getRandomLetter(char original) {
-        if (Character.isUpperCase(original)) {
-            return getRandomUppercase();
-        } else {
-            return getRandomLowercase();
-        }
+    public static boolean hasRule(String type) {
+        return rules.containsKey(type);
     }
     
     /**
-     * Generate a random alphanumeric character (preserving type)
+     * Classify every UTF-16 code unit once, so kernels need a single array load per char
+     * instead of {@link Character.UnicodeBlock#of(char)}, which is a binary search.
      */
-    private static char getRandomAlphanumeric(char original) {
-        if (Character.isDigit(original)) {
-            return getRandomDigit();
-        } else if (Character.isLetter(original)) {
-            return getRandomLetter(original);
-        } else {
-            return original; // Keep special characters as is
+    private static byte[] buildCharClasses() {
+        byte[] classes = new byte[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char ch = (char) c;
+            int basic = CLASS_OTHER;
+            if (Character.isDigit(ch)) {
+                basic = CLASS_DIGIT;
+            } else if (Character.isLetter(ch)) {
+                basic = Character.isUpperCase(ch) ? CLASS_UPPER : CLASS_LOWER;
+            }
+            
+            int script = SCRIPT_NONE;
+            Character.UnicodeBlock block = Character.UnicodeBlock.of(ch);
+            if (block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) {
+                script = SCRIPT_CJK;
+            } else if (block == Character.UnicodeBlock.HIRAGANA || block == Character.UnicodeBlock.KATAKANA) {
+                script = SCRIPT_KANA;
+            } else if (block == Character.UnicodeBlock.HANGUL_SYLLABLES) {
+                script = SCRIPT_HANGUL;
+            }
+            classes[c] = (byte) (basic | script);
         }
+        return classes;
     }
     
     /**
-     * Generate a random Chinese character
-     */
-    private static char getRandomChineseChar() {
-        // Range of common Chinese characters in Unicode
-        return (char) (0x4E00 + random.nextInt(0x9FA5 - 0x4E00));
-    }
-    
-    /**
-     * Generate a random Japanese character (Hiragana)
-     */
-    private static char getRandomJapaneseChar() {
-        // Range of Hiragana characters in Unicode
-        return (char) (0x3040 + random.nextInt(0x309F - 0x3040));
-    }
-    
-    /**
-     * Generate a random Korean character (Hangul)
-     */
-    private static char getRandomKoreanChar() {
-        // Range of Hangul characters in Unicode
-        return (char) (0xAC00 + random.nextInt(0xD7A3 - 0xAC00));
-    }
-    
-    /**
-     * Generate a random character of the same script as the original
+     * Replace characters of the selected classes with random characters of the same class.
+     * Works in place on one pre-sized char array, so the only allocations are the array and the result.
+     * 
+     * @param value The original value
+     * @param mode Combination of REPLACE_DIGITS, REPLACE_LETTERS and REPLACE_SCRIPTS
+     * @return The anonymized value
      */
-    private static char getRandomCharacterOfSameScript(char original) {
-        Character.UnicodeBlock block = Character.UnicodeBlock.of(original);
+    private static String replaceChars(String value, int mode) {
+        RandomSource random = RandomSources.current();
+        int length = value.length();
+        char[] chars = new char[length];
+        value.getChars(0, length, chars, 0);
         
-        if (block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) {
-            return getRandomChineseChar();
-        } else if (block == Character.UnicodeBlock.HIRAGANA || block == Character.UnicodeBlock.KATAKANA) {
-            return getRandomJapaneseChar();
-        } else if (block == Character.UnicodeBlock.HANGUL_SYLLABLES) {
-            return getRandomKoreanChar();
-        } else if (Character.isLetter(original)) {
-            // For Latin and other alphabets
-            return getRandomLetter(original);
-        } else if (Character.isDigit(original)) {
-            return getRandomDigit();
-        } else {
-            // Keep other characters (punctuation, etc.) as is
-            return original;
+        for (int i = 0; i < length; i++) {
+            int charClass = CHAR_CLASSES[chars[i]];
+            if ((mode & REPLACE_SCRIPTS) != 0 && (charClass & SCRIPT_MASK) != SCRIPT_NONE) {
+                switch (charClass & SCRIPT_MASK) {
+                    case SCRIPT_CJK:
+                        // Range of common Chinese characters in Unicode
+                        chars[i] = (char) (0x4E00 + random.nextInt(0x9FA5 - 0x4E00));
+                        break;
+                    case SCRIPT_KANA:
+                        // Range of Hiragana characters in Unicode
+                        chars[i] = (char) (0x3040 + random.nextInt(0x309F - 0x3040));
+                        break;
+                    default:
+                        // Range of Hangul characters in Unicode
+                        chars[i] = (char) (0xAC00 + random.nextInt(0xD7A3 - 0xAC00));
+                        break;
+                }
+                continue;
+            }
+            
+            switch (charClass & BASIC_MASK) {
+                case CLASS_DIGIT:
+                    if ((mode & REPLACE_DIGITS) != 0) {
+                        chars[i] = (char) ('0' + random.nextInt(10));
+                    }
+                    break;
+                case CLASS_UPPER:
+                    if ((mode & REPLACE_LETTERS) != 0) {
+                        chars[i] = (char) ('A' + random.nextInt(26));
+                    }
+                    break;
+                case CLASS_LOWER:
+                    if ((mode & REPLACE_LETTERS) != 0) {
+                        chars[i] = (char) ('a' + random.nextInt(26));
+                    }
+                    break;
+                default:
+                    // Keep punctuation, whitespace and other characters as is
+                    break;
+            }
         }
+        
+        return new String(chars);
     }
     
     /**
-     * Generate a random amount value
+     * Generate a random amount value with a similar magnitude, keeping currency symbols
+     * and other non-numeric characters in place
      */
     private static String generateRandomAmount(String originalAmount) {
-        try {
-            // Try to parse the original amount to determine a reasonable range
-            double original = Double.parseDouble(originalAmount.replaceAll("[^0-9.]", ""));
-            
-            // Generate a random amount with similar magnitude
-            double magnitude = Math.pow(10, Math.floor(Math.log10(original)));
-            double randomAmount = random.nextDouble() * magnitude * 10;
-            
-            // Format with same number of decimal places as original
-            int decimalPlaces = 0;
-            if (originalAmount.contains(".")) {
-                decimalPlaces = originalAmount.length() - originalAmount.indexOf(".") - 1;
-            }
-            
-            String format = "%." + decimalPlaces + "f";
-            String result = String.format(format, randomAmount);
-            
-            // Preserve currency symbols or other non-numeric characters
-            StringBuilder finalResult = new StringBuilder();
-            int resultIndex = 0;
-            
-            for (char c : originalAmount.toCharArray()) {
-                if (Character.isDigit(c) || c == '.') {
-                    if (resultIndex < result.length()) {
-                        finalResult.append(result.charAt(resultIndex++));
-                    }
+        RandomSource random = RandomSources.current();
+        int length = originalAmount.length();
+        
+        // Parse the digits and the decimal point, ignoring all other characters
+        double original = 0;
+        double fractionScale = 0;
+        int digits = 0;
+        for (int i = 0; i < length; i++) {
+            char c = originalAmount.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (fractionScale == 0) {
+                    original = original * 10 + (c - '0');
                 } else {
-                    finalResult.append(c); // Preserve currency symbols and other characters
+                    fractionScale /= 10;
+                    original += (c - '0') * fractionScale;
                 }
+                digits++;
+            } else if (c == '.') {
+                if (fractionScale != 0) {
+                    // More than one decimal point, not a number
+                    return String.valueOf(random.nextInt(10000));
+                }
+                fractionScale = 1;
             }
-            
-            return finalResult.toString();
-        } catch (NumberFormatException | ArithmeticException e) {
-            // If parsing fails, generate a completely random amount
+        }
+        if (digits == 0) {
             return String.valueOf(random.nextInt(10000));
         }
+        
+        // Generate a random amount with similar magnitude
+        double magnitude = Math.pow(10, Math.floor(Math.log10(original)));
+        double randomAmount = random.nextDouble() * magnitude * 10;
+        
+        // Format with same number of decimal places as original
+        int dot = originalAmount.indexOf('.');
+        int decimalPlaces = dot >= 0 ? length - dot - 1 : 0;
+        char[] formatted = formatFixed(randomAmount, decimalPlaces);
+        
+        // Fill the numeric positions of the original with the formatted amount
+        char[] result = new char[length];
+        int resultLength = 0;
+        int formattedIndex = 0;
+        for (int i = 0; i < length; i++) {
+            char c = originalAmount.charAt(i);
+            if ((CHAR_CLASSES[c] & BASIC_MASK) == CLASS_DIGIT || c == '.') {
+                if (formattedIndex < formatted.length) {
+                    result[resultLength++] = formatted[formattedIndex++];
+                }
+            } else {
+                result[resultLength++] = c; // Preserve currency symbols and other characters
+            }
+        }
+        
+        return new String(result, 0, resultLength);
     }
     
     /**
-     * Generate random text preserving structure
+     * Format a non-negative value with a fixed number of decimal places (half-up rounding)
      */
-    private static String generateRandomText(String originalText) {
-        if (originalText == null || originalText.isEmpty()) {
-            return originalText;
+    private static char[] formatFixed(double value, int decimalPlaces) {
+        if (decimalPlaces > 9 || value >= 1e15 || Double.isNaN(value)) {
+            return String.format("%." + decimalPlaces + "f", value).toCharArray();
         }
         
-        StringBuilder result = new StringBuilder();
-        String[] words = originalText.split("\\s+");
+        long scale = 1;
+        for (int i = 0; i < decimalPlaces; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(value * scale);
+        long integerPart = scaled / scale;
+        long fractionPart = scaled % scale;
         
-        for (int i = 0; i < words.length; i++) {
-            if (i > 0) {
-                result.append(" ");
-            }
-            
-            String word = words[i];
-            StringBuilder randomWord = new StringBuilder();
-            
-            for (char c : word.toCharArray()) {
-                randomWord.append(getRandomCharacterOfSameScript(c));
+        int integerDigits = 1;
+        for (long n = integerPart; n >= 10; n /= 10) {
+            integerDigits++;
+        }
+        char[] chars = new char[integerDigits + (decimalPlaces > 0 ? decimalPlaces + 1 : 0)];
+        for (int i = integerDigits - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + integerPart % 10);
+            integerPart /= 10;
+        }
+        if (decimalPlaces > 0) {
+            chars[integerDigits] = '.';
+            for (int i = chars.length - 1; i > integerDigits; i--) {
+                chars[i] = (char) ('0' + fractionPart % 10);
+                fractionPart /= 10;
             }
-            
-            result.append(randomWord);
         }
-        
-        return result.toString();
+        return chars;
     }
     
     /**
@@ -237,12 +284,7 @@ public class AnonymizationRules {
                 return value;
             }
             
-            StringBuilder anonymized = new StringBuilder();
-            for (char c : value.toCharArray()) {
-                anonymized.append(getRandomAlphanumeric(c));
-            }
-            
-            return anonymized.toString();
+            return replaceChars(value, REPLACE_DIGITS | REPLACE_LETTERS);
         }
     }
     
@@ -256,12 +298,7 @@ public class AnonymizationRules {
                 return value;
             }
             
-            StringBuilder anonymized = new StringBuilder();
-            for (char c : value.toCharArray()) {
-                anonymized.append(getRandomAlphanumeric(c));
-            }
-            
-            return anonymized.toString();
+            return replaceChars(value, REPLACE_DIGITS | REPLACE_LETTERS);
         }
     }
     
@@ -279,12 +316,7 @@ public class AnonymizationRules {
                 return value;
             }
             
-            StringBuilder anonymized = new StringBuilder();
-            for (char c : value.toCharArray()) {
-                anonymized.append(getRandomCharacterOfSameScript(c));
-            }
-            
-            return anonymized.toString();
+            return replaceChars(value, REPLACE_DIGITS | REPLACE_LETTERS | REPLACE_SCRIPTS);
         }
     }
     
@@ -298,16 +330,8 @@ public class AnonymizationRules {
                 return value;
             }
             
-            StringBuilder anonymized = new StringBuilder();
-            for (char c : value.toCharArray()) {
-                if (Character.isDigit(c)) {
-                    anonymized.append(getRandomDigit());
-                } else {
-                    anonymized.append(c); // Keep non-digit characters as is
-                }
-            }
-            
-            return anonymized.toString();
+            // Keep non-digit characters as is
+            return replaceChars(value, REPLACE_DIGITS);
         }
     }
     
@@ -321,16 +345,8 @@ public class AnonymizationRules {
                 return value;
             }
             
-            StringBuilder anonymized = new StringBuilder();
-            for (char c : value.toCharArray()) {
-                if (Character.isDigit(c)) {
-                    anonymized.append(getRandomDigit());
-                } else {
-                    anonymized.append(c); // Keep non-digit characters like '-' as is
-                }
-            }
-            
-            return anonymized.toString();
+            // Keep non-digit characters like '-' as is
+            return replaceChars(value, REPLACE_DIGITS);
         }
     }
     
@@ -344,16 +360,8 @@ public class AnonymizationRules {
                 return value;
             }
             
-            StringBuilder anonymized = new StringBuilder();
-            for (char c : value.toCharArray()) {
-                if (Character.isLetter(c)) {
-                    anonymized.append(getRandomLetter(c));
-                } else {
-                    anonymized.append(c); // Keep '@', '.', and other special characters
-                }
-            }
-            
-            return anonymized.toString();
+            // Keep '@', '.', and other special characters
+            return replaceChars(value, REPLACE_LETTERS);
         }
     }
     
@@ -373,7 +381,8 @@ public class AnonymizationRules {
     }
     
     /**
-     * Text rule: Replace text with random characters, preserving word structure
+     * Text rule: Replace text with random characters of the same script,
+     * preserving word structure (whitespace and punctuation are kept as is)
      */
     private static class TextRule implements AnonymizationRule {
         @Override
@@ -382,7 +391,7 @@ public class AnonymizationRules {
                 return value;
             }
             
-            return generateRandomText(value);
+            return replaceChars(value, REPLACE_DIGITS | REPLACE_LETTERS | REPLACE_SCRIPTS);
         }
     }
-} 
\ No newline at end of file
+}
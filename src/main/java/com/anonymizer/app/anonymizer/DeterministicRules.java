@@ -0,0 +1,120 @@
+package com.anonymizer.app.anonymizer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Factory for deterministic anonymization rules.
+ * 
+ * A deterministic rule seeds the random source of the underlying rule with a keyed hash
+ * (HMAC-SHA256 with a secret) of the rule type and the input value. The same input of the same
+ * type therefore always produces the same output, across tables and across runs, while the output
+ * cannot be reproduced without the secret. Results are kept in a bounded W-TinyLFU cache shared by
+ * all rules, so frequently repeated values are not regenerated.
+ */
+public class DeterministicRules {
+    private static final String ALGORITHM = "HmacSHA256";
+    
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+    private final Cache<String, String> cache;
+    
+    /**
+     * @param secret The secret used to key the hash
+     * @param cacheSize The maximum number of cached values, 0 to disable the cache
+     */
+    public DeterministicRules(String secret, long cacheSize) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A secret is required for deterministic anonymization");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::createMac);
+        this.cache = cacheSize > 0 ? Caffeine.newBuilder().maximumSize(cacheSize).recordStats().build() : null;
+        // Fail fast if the algorithm or key is unusable
+        createMac();
+    }
+    
+    /**
+     * Get the deterministic rule for the given type
+     * 
+     * @param type The rule type
+     * @return The deterministic rule, or the default rule if the type is unknown
+     */
+    public AnonymizationRule getRule(String type) {
+        AnonymizationRule rule = AnonymizationRules.getRule(type);
+        if (!AnonymizationRules.hasRule(type)) {
+            return rule;
+        }
+        return new DeterministicRule(type, rule);
+    }
+    
+    /**
+     * Get the cache statistics
+     * 
+     * @return The statistics, or null if the cache is disabled
+     */
+    public CacheStats getCacheStats() {
+        return cache != null ? cache.stats() : null;
+    }
+    
+    private Mac createMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+    }
+    
+    /**
+     * Derive the seed for a value from its keyed hash
+     */
+    private long seedFor(String type, String value) {
+        Mac instance = mac.get();
+        instance.update(type.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        byte[] digest = instance.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest).getLong();
+    }
+    
+    /**
+     * Rule that runs the underlying rule with a random source seeded from the keyed hash of the value
+     */
+    private class DeterministicRule implements AnonymizationRule {
+        private final String type;
+        private final AnonymizationRule delegate;
+        
+        DeterministicRule(String type, AnonymizationRule delegate) {
+            this.type = type;
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public String anonymize(String value) {
+            if (value == null || value.isEmpty()) {
+                return value;
+            }
+            if (cache == null) {
+                return generate(value);
+            }
+            return cache.get(type + '\u0000' + value, ignored -> generate(value));
+        }
+        
+        private String generate(String value) {
+            RandomSource previous = RandomSources.bind(RandomSources.seeded(seedFor(type, value)));
+            try {
+                return delegate.anonymize(value);
+            } finally {
+                RandomSources.bind(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.anonymizer.app.anonymizer;
+
+/**
+ * Source of random numbers used by anonymization rules.
+ * Implementations are not required to be thread-safe; use {@link RandomSources#current()}
+ * to obtain the source bound to the calling thread.
+ */
+public interface RandomSource {
+    /**
+     * Return a random int between 0 (inclusive) and the given bound (exclusive)
+     * 
+     * @param bound The upper bound, must be positive
+     * @return A random int
+     */
+    int nextInt(int bound);
+    
+    /**
+     * Return a random double between 0.0 (inclusive) and 1.0 (exclusive)
+     * 
+     * @return A random double
+     */
+    double nextDouble();
+}
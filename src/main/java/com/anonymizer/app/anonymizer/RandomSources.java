@@ -0,0 +1,121 @@
+package com.anonymizer.app.anonymizer;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Factory and per-thread registry for {@link RandomSource}s.
+ * 
+ * By default every thread draws from {@link ThreadLocalRandom}, so rules running on many threads
+ * never contend on a shared seed. For reproducible runs a thread can bind a seeded source with
+ * {@link #bind(RandomSource)} before anonymizing a unit of work and {@link #unbind()} afterwards.
+ */
+public final class RandomSources {
+    private static final RandomSource THREAD_LOCAL = new ThreadLocalRandomSource();
+    private static final ThreadLocal<RandomSource> CURRENT = new ThreadLocal<>();
+    
+    private RandomSources() {
+    }
+    
+    /**
+     * Get the random source bound to the calling thread
+     * 
+     * @return The bound source, or the {@link ThreadLocalRandom} based default
+     */
+    public static RandomSource current() {
+        RandomSource source = CURRENT.get();
+        return source != null ? source : THREAD_LOCAL;
+    }
+    
+    /**
+     * Bind a random source to the calling thread
+     * 
+     * @param source The source used by rules on this thread until {@link #unbind()} is called,
+     *               or null to restore the default
+     * @return The previously bound source, or null if none was bound
+     */
+    public static RandomSource bind(RandomSource source) {
+        RandomSource previous = CURRENT.get();
+        if (source == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(source);
+        }
+        return previous;
+    }
+    
+    /**
+     * Restore the default random source for the calling thread
+     */
+    public static void unbind() {
+        CURRENT.remove();
+    }
+    
+    /**
+     * Get the fast, non-reproducible per-thread source
+     * 
+     * @return A source backed by {@link ThreadLocalRandom}
+     */
+    public static RandomSource threadLocal() {
+        return THREAD_LOCAL;
+    }
+    
+    /**
+     * Create a reproducible source for one stream of work, e.g. one table range.
+     * The same seed and stream name always produce the same sequence, independent of
+     * which thread runs the stream or in which order streams are scheduled.
+     * 
+     * @param seed The run seed
+     * @param stream The name of the stream
+     * @return A new, non thread-safe source
+     */
+    public static RandomSource seeded(long seed, String stream) {
+        return new SplittableRandomSource(new SplittableRandom(seed * 0x9E3779B97F4A7C15L + stream.hashCode()));
+    }
+    
+    /**
+     * Create a reproducible source from a single seed
+     * 
+     * @param seed The seed
+     * @return A new, non thread-safe source
+     */
+    public static RandomSource seeded(long seed) {
+        return new SplittableRandomSource(new SplittableRandom(seed));
+    }
+    
+    /**
+     * Source backed by the calling thread's {@link ThreadLocalRandom}
+     */
+    private static class ThreadLocalRandomSource implements RandomSource {
+        @Override
+        public int nextInt(int bound) {
+            return ThreadLocalRandom.current().nextInt(bound);
+        }
+        
+        @Override
+        public double nextDouble() {
+            return ThreadLocalRandom.current().nextDouble();
+        }
+    }
+    
+    /**
+     * Source backed by a {@link SplittableRandom}, confined to one thread at a time
+     */
+    private static class SplittableRandomSource implements RandomSource {
+        private final SplittableRandom random;
+        
+        SplittableRandomSource(SplittableRandom random) {
+            this.random = random;
+        }
+        
+        @Override
+        public int nextInt(int bound) {
+            return random.nextInt(bound);
+        }
+        
+        @Override
+        public double nextDouble() {
+            return random.nextDouble();
+        }
+    }
+}
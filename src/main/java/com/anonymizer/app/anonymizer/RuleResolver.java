@@ -0,0 +1,72 @@
+package com.anonymizer.app.anonymizer;
+
+import com.anonymizer.app.config.ConfigLoader;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resolves the anonymization rule for each configured column, honouring the configured
+ * anonymization mode (random or deterministic).
+ */
+public class RuleResolver {
+    private static final Logger logger = LoggerFactory.getLogger(RuleResolver.class);
+    
+    private final ConfigLoader configLoader;
+    private final DeterministicRules deterministicRules;
+    
+    public RuleResolver(ConfigLoader configLoader) {
+        this.configLoader = configLoader;
+        this.deterministicRules = configLoader.isDeterministic()
+                ? new DeterministicRules(configLoader.getAnonymizationSecret(), configLoader.getAnonymizationCacheSize())
+                : null;
+    }
+    
+    /**
+     * Whether rules derive their output from the input value instead of a random source
+     * 
+     * @return true in deterministic mode
+     */
+    public boolean isDeterministic() {
+        return deterministicRules != null;
+    }
+    
+    /**
+     * Get the rule for the given type
+     * 
+     * @param type The rule type
+     * @return The anonymization rule
+     */
+    public AnonymizationRule getRule(String type) {
+        return deterministicRules != null ? deterministicRules.getRule(type) : AnonymizationRules.getRule(type);
+    }
+    
+    /**
+     * Get the rules for all configured columns of a table
+     * 
+     * @param tableName The table name
+     * @return Column name to rule, in configuration order
+     */
+    public Map<String, AnonymizationRule> getColumnRules(String tableName) {
+        Map<String, String> columnTypes = configLoader.getColumnTypes(tableName);
+        Map<String, AnonymizationRule> columnRules = new LinkedHashMap<>();
+        for (String column : configLoader.getColumnsToAnonymize(tableName)) {
+            columnRules.put(column, getRule(columnTypes.get(column)));
+        }
+        return columnRules;
+    }
+    
+    /**
+     * Log the deterministic value cache statistics, if the cache is in use
+     */
+    public void logCacheStats() {
+        CacheStats stats = deterministicRules != null ? deterministicRules.getCacheStats() : null;
+        if (stats != null) {
+            logger.info("Deterministic value cache: {} hits, {} misses, hit rate {}",
+                    stats.hitCount(), stats.missCount(), String.format("%.1f%%", stats.hitRate() * 100));
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.anonymizer.app.config;
 
 import com.anonymizer.app.db.DatabaseType;
+import com.anonymizer.app.db.WriteMode;
+import com.anonymizer.app.export.Compression;
+import com.anonymizer.app.export.ExportFormat;
 import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.MapConfiguration;
 import org.apache.commons.configuration2.builder.fluent.Configurations;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.slf4j.Logger;
@@ -31,6 +35,16 @@ public class ConfigLoader {
         loadConfig();
     }
     
+    /**
+     * 使用给定的配置属性，不读取配置文件（用于基准测试等以代码生成配置的场景）
+     * 
+     * @param properties 配置属性
+     */
+    public ConfigLoader(Properties properties) {
+        this.properties = properties;
+        this.config = new MapConfiguration(properties);
+    }
+    
     /**
      * 加载配置文件
      */
@@ -63,6 +77,256 @@ public class ConfigLoader {
         return DatabaseType.fromString(type);
     }
     
+    /**
+     * 获取运行模式
+     * 
+     * @return 运行模式
+     */
+    public RunMode getRunMode() {
+        return RunMode.fromString(config.getString("run.mode", "update"));
+    }
+    
+    /**
+     * 获取复制模式下执行脱敏的转换线程数
+     * 
+     * @return 转换线程数，默认为CPU核数
+     */
+    public int getCopyTransformWorkers() {
+        return Math.max(1, config.getInt("copy.transformWorkers", Runtime.getRuntime().availableProcessors()));
+    }
+    
+    /**
+     * 获取复制模式下每个批次的行数
+     * 
+     * @return 每批行数
+     */
+    public int getCopyBatchSize() {
+        return Math.max(1, config.getInt("copy.batchSize", 1000));
+    }
+    
+    /**
+     * 获取复制模式下各阶段之间队列最多容纳的批次数
+     * 
+     * @return 队列容量
+     */
+    public int getCopyQueueSize() {
+        return Math.max(1, config.getInt("copy.queueSize", 8));
+    }
+    
+    /**
+     * 复制模式下是否在复制前清空目标表，并在复制失败后清空已写入的部分数据
+     * 
+     * @return 默认为false
+     */
+    public boolean isCopyTruncateTarget() {
+        return config.getBoolean("copy.truncateTarget", false);
+    }
+    
+    /**
+     * 获取导出模式下转储文件的输出目录
+     * 
+     * @return 输出目录
+     */
+    public String getExportDirectory() {
+        return config.getString("export.dir", "export");
+    }
+    
+    /**
+     * 获取导出文件的格式
+     * 
+     * @return 导出格式
+     */
+    public ExportFormat getExportFormat() {
+        return ExportFormat.fromString(config.getString("export.format", "sql"));
+    }
+    
+    /**
+     * 获取导出文件的压缩方式
+     * 
+     * @return 压缩方式
+     */
+    public Compression getExportCompression() {
+        return Compression.fromString(config.getString("export.compression", "gzip"));
+    }
+    
+    /**
+     * 获取单个导出文件的大小上限，超过后切分到下一个文件
+     * 
+     * @return 大小上限（字节）
+     */
+    public long getExportMaxFileBytes() {
+        return Math.max(1L, config.getLong("export.maxFileSizeMB", 1024L)) * 1024 * 1024;
+    }
+    
+    /**
+     * 获取写导出文件时直接缓冲区的大小
+     * 
+     * @return 缓冲区大小（字节）
+     */
+    public int getExportBufferSize() {
+        return Math.max(64, config.getInt("export.bufferSizeKB", 4096)) * 1024;
+    }
+    
+    /**
+     * 获取SQL格式导出时每条 INSERT 语句包含的行数
+     * 
+     * @return 行数
+     */
+    public int getExportInsertBatchSize() {
+        return Math.max(1, config.getInt("export.insertBatchSize", 1000));
+    }
+    
+    /**
+     * 获取离线模式下要改写的转储文件路径
+     * 
+     * @return 输入文件路径
+     */
+    public String getDumpInput() {
+        String input = config.getString("dump.input");
+        if (input == null || input.isEmpty()) {
+            throw new IllegalStateException("dump.input must be configured when run.mode=dump");
+        }
+        return input;
+    }
+    
+    /**
+     * 获取离线模式下改写结果的输出路径
+     * 
+     * @return 输出文件路径，默认为输入文件名加上 .anonymized 和压缩扩展名
+     */
+    public String getDumpOutput() {
+        return config.getString("dump.output", getDumpInput() + ".anonymized" + getDumpCompression().getExtension());
+    }
+    
+    /**
+     * 获取转储文件的来源数据库类型，决定字符串字面量的转义方式
+     * 
+     * @return 数据库类型，未配置时使用 database.type
+     */
+    public DatabaseType getDumpType() {
+        return DatabaseType.fromString(config.getString("dump.type", config.getString("database.type", "mysql")));
+    }
+    
+    /**
+     * 获取离线模式下解析和脱敏的工作线程数
+     * 
+     * @return 工作线程数，默认为CPU核数
+     */
+    public int getDumpWorkers() {
+        return Math.max(1, config.getInt("dump.workers", Runtime.getRuntime().availableProcessors()));
+    }
+    
+    /**
+     * 获取离线模式下输出文件的压缩方式
+     * 
+     * @return 压缩方式，默认不压缩
+     */
+    public Compression getDumpCompression() {
+        return Compression.fromString(config.getString("dump.compression", "none"));
+    }
+    
+    /**
+     * 是否把每个工作单元已提交的进度记录到检查点文件
+     * 
+     * @return 默认为true
+     */
+    public boolean isCheckpointEnabled() {
+        return config.getBoolean("checkpoint.enabled", true);
+    }
+    
+    /**
+     * 获取检查点文件路径
+     * 
+     * @return 检查点文件路径
+     */
+    public String getCheckpointFile() {
+        return config.getString("checkpoint.file", "anonymizer.checkpoint");
+    }
+    
+    /**
+     * 获取检查点中水位的最小写入间隔，大于0时续跑可能重做最后这段时间内已提交的行
+     * 
+     * @return 间隔（毫秒），默认5000；确定性模式下默认0，即每次提交后都写入
+     */
+    public long getCheckpointFlushMillis() {
+        return Math.max(0L, config.getLong("checkpoint.flushMillis", isDeterministic() ? 0L : 5000L));
+    }
+    
+    /**
+     * 是否把启动时读取的表结构（列和主键）缓存到本地文件，表结构未变化时下次启动直接使用
+     * 
+     * @return 默认为true
+     */
+    public boolean isSchemaCacheEnabled() {
+        return config.getBoolean("schema.cache", true);
+    }
+    
+    /**
+     * 获取表结构缓存文件路径
+     * 
+     * @return 缓存文件路径
+     */
+    public String getSchemaCacheFile() {
+        return config.getString("schema.cacheFile", "anonymizer.schema");
+    }
+    
+    /**
+     * 获取指定表的增量水位列，配置后该表只处理水位列大于上一次成功运行记录的水位的行
+     * 
+     * @param tableName 表名
+     * @return 水位列，未配置时返回null（全量处理）
+     */
+    public String getWatermarkColumn(String tableName) {
+        String column = config.getString(tableName + ".watermarkColumn", null);
+        return column == null || column.trim().isEmpty() ? null : column.trim();
+    }
+    
+    /**
+     * 获取记录增量水位的文件路径
+     * 
+     * @return 水位文件路径
+     */
+    public String getWatermarkFile() {
+        return config.getString("incremental.file", "anonymizer.watermarks");
+    }
+    
+    /**
+     * 获取工作单元遇到连接中断等可重试错误时的最大重试次数
+     * 
+     * @return 重试次数，0表示不重试
+     */
+    public int getRetryMaxAttempts() {
+        return Math.max(0, config.getInt("retry.maxAttempts", 3));
+    }
+    
+    /**
+     * 获取第一次重试前的等待时间，之后每次翻倍
+     * 
+     * @return 等待时间（毫秒）
+     */
+    public long getRetryBackoffMillis() {
+        return Math.max(0, config.getLong("retry.backoffMs", 1000));
+    }
+    
+    /**
+     * 是否在运行期间把各表的运行指标注册为JMX MBean
+     * 
+     * @return 默认为true
+     */
+    public boolean isMetricsJmxEnabled() {
+        return config.getBoolean("metrics.jmx", true);
+    }
+    
+    /**
+     * 获取运行结束后写出的JSON指标报告路径
+     * 
+     * @return 报告文件路径，配置为空时返回null（不写报告）
+     */
+    public String getMetricsReportFile() {
+        String file = config.getString("metrics.report", "anonymizer-metrics.json");
+        return file == null || file.trim().isEmpty() ? null : file.trim();
+    }
+    
     /**
      * 获取配置属性
      * 
@@ -72,6 +336,211 @@ public class ConfigLoader {
         return properties;
     }
     
+    /**
+     * 获取并行处理表的工作线程数，1表示顺序处理
+     * 
+     * @return 工作线程数
+     */
+    public int getParallelWorkers() {
+        int workers = config.getInt("parallel.workers", 1);
+        return Math.max(1, workers);
+    }
+    
+    /**
+     * 是否为每个工作单元启动一个虚拟线程（需要Java 21），同时访问数据库的工作单元数仍由 parallel.workers 限制
+     * 
+     * @return parallel.threads 配置为 virtual 时返回true，默认（platform）使用固定大小的平台线程池
+     */
+    public boolean isVirtualThreads() {
+        return "virtual".equalsIgnoreCase(config.getString("parallel.threads", "platform").trim());
+    }
+    
+    /**
+     * 获取指定表按主键切分的范围数量，未单独配置时使用 parallel.chunks
+     * 
+     * @param tableName 表名
+     * @return 范围数量，1表示不切分
+     */
+    public int getTableChunks(String tableName) {
+        int chunks = config.getInt(tableName + ".chunks", config.getInt("parallel.chunks", 1));
+        return Math.max(1, chunks);
+    }
+    
+    /**
+     * 获取流式读取时每次从数据库获取的行数
+     * 
+     * @return 每批获取的行数
+     */
+    public int getFetchSize() {
+        return Math.max(1, config.getInt("read.fetchSize", 1000));
+    }
+    
+    /**
+     * 获取随机数种子。配置后每个工作单元使用由种子派生的独立随机序列，相同数据和配置的运行结果完全一致
+     * 
+     * @return 随机数种子，未配置时返回null
+     */
+    public Long getRandomSeed() {
+        if (!config.containsKey("random.seed")) {
+            return null;
+        }
+        return config.getLong("random.seed");
+    }
+    
+    /**
+     * 是否使用确定性脱敏模式（anonymize.mode=deterministic）
+     * 
+     * @return 确定性模式返回true，随机模式返回false
+     */
+    public boolean isDeterministic() {
+        return "deterministic".equalsIgnoreCase(config.getString("anonymize.mode", "random"));
+    }
+    
+    /**
+     * 获取确定性脱敏模式使用的密钥
+     * 
+     * @return 密钥，未配置时返回null
+     */
+    public String getAnonymizationSecret() {
+        return config.getString("anonymize.secret", null);
+    }
+    
+    /**
+     * 获取确定性脱敏模式下缓存的最大条目数
+     * 
+     * @return 缓存条目数，0表示不缓存
+     */
+    public long getAnonymizationCacheSize() {
+        return Math.max(0, config.getLong("anonymize.cacheSize", 100000));
+    }
+    
+    /**
+     * 是否在数据库端用SQL表达式完成指定表的脱敏，未单独配置时使用 anonymize.pushdown
+     * 
+     * @param tableName 表名
+     * @return 启用下推返回true
+     */
+    public boolean isPushdownEnabled(String tableName) {
+        return config.getBoolean(tableName + ".pushdown", config.getBoolean("anonymize.pushdown", false));
+    }
+    
+    /**
+     * 获取指定表脱敏结果的写入方式，未单独配置时使用 write.mode
+     * 
+     * @param tableName 表名
+     * @return 写入方式
+     */
+    public WriteMode getWriteMode(String tableName) {
+        return WriteMode.fromString(config.getString(tableName + ".writeMode", config.getString("write.mode", "update")));
+    }
+    
+    /**
+     * 判断指定表是否按数据库的物理行地址（ROWID / ctid）定位行，未单独配置时使用 write.rowAddress
+     * 
+     * @param tableName 表名
+     * @return 配置为 physical 时返回true，默认（key）按主键定位
+     */
+    public boolean isPhysicalRowAddress(String tableName) {
+        return "physical".equalsIgnoreCase(
+                config.getString(tableName + ".rowAddress", config.getString("write.rowAddress", "key")).trim());
+    }
+    
+    /**
+     * 获取指定表每次执行批处理的行数（自适应模式下为初始值），未单独配置时使用 write.batchSize
+     * 
+     * @param tableName 表名
+     * @return 行数，默认1000
+     */
+    public int getBatchSize(String tableName) {
+        return Math.max(1, config.getInt(tableName + ".batchSize", config.getInt("write.batchSize", 1000)));
+    }
+    
+    /**
+     * 获取指定表两次提交之间最少写入的行数，未单独配置时使用 write.commitInterval
+     * 
+     * @param tableName 表名
+     * @return 行数，默认与批处理行数相同，即每个批处理提交一次；自适应模式下为提交间隔的上限，默认为 write.maxBatchSize
+     */
+    public int getCommitInterval(String tableName) {
+        int defaultInterval = config.getInt("write.commitInterval",
+                isAdaptiveBatching(tableName) ? getMaxBatchSize() : getBatchSize(tableName));
+        return Math.max(1, config.getInt(tableName + ".commitInterval", defaultInterval));
+    }
+    
+    /**
+     * 指定表是否按批处理耗时自动调整批处理行数，未单独配置时使用 write.adaptive
+     * 
+     * @param tableName 表名
+     * @return 默认为false
+     */
+    public boolean isAdaptiveBatching(String tableName) {
+        return config.getBoolean(tableName + ".adaptive", config.getBoolean("write.adaptive", false));
+    }
+    
+    /**
+     * 获取自适应模式下单次批处理的目标耗时
+     * 
+     * @return 目标耗时（毫秒），默认200
+     */
+    public long getTargetBatchMillis() {
+        return Math.max(1L, config.getLong("write.targetBatchMillis", 200L));
+    }
+    
+    /**
+     * 获取自适应模式下的最小批处理行数
+     * 
+     * @return 行数，默认100
+     */
+    public int getMinBatchSize() {
+        return Math.max(1, config.getInt("write.minBatchSize", 100));
+    }
+    
+    /**
+     * 获取自适应模式下的最大批处理行数
+     * 
+     * @return 行数，默认20000
+     */
+    public int getMaxBatchSize() {
+        return Math.max(1, config.getInt("write.maxBatchSize", 20000));
+    }
+    
+    /**
+     * 获取暂存表写入方式下每次装载并关联更新的行数
+     * 
+     * @return 行数
+     */
+    public int getStagingRows() {
+        return Math.max(1, config.getInt("write.stagingRows", 50000));
+    }
+    
+    /**
+     * 指定表逐行脱敏时是否把读取、脱敏和写入分到不同的线程同时进行，未单独配置时使用 pipeline.enabled
+     * 
+     * @param tableName 表名
+     * @return 默认为false
+     */
+    public boolean isPipelineEnabled(String tableName) {
+        return config.getBoolean(tableName + ".pipeline", config.getBoolean("pipeline.enabled", false));
+    }
+    
+    /**
+     * 获取流水线中每个工作单元的脱敏线程数
+     * 
+     * @return 线程数，默认1
+     */
+    public int getPipelineTransformWorkers() {
+        return Math.max(1, config.getInt("pipeline.transformWorkers", 1));
+    }
+    
+    /**
+     * 获取流水线各阶段之间环形缓冲区的行数
+     * 
+     * @return 行数（向上取整为2的幂），默认4096
+     */
+    public int getPipelineRingSize() {
+        return Math.max(2, config.getInt("pipeline.ringSize", 4096));
+    }
+    
     /**
      * 获取需要处理的所有表名
      */
@@ -0,0 +1,33 @@
+package com.anonymizer.app.config;
+
+/**
+ * 运行模式
+ */
+public enum RunMode {
+    /** 在原库中就地更新 */
+    UPDATE,
+    /** 从源库读取，把脱敏后的数据写入目标库 */
+    COPY,
+    /** 从源库读取，把脱敏后的数据导出为压缩的转储文件 */
+    EXPORT,
+    /** 不连接数据库，直接改写已有的 mysqldump / pg_dump 文件 */
+    DUMP;
+    
+    /**
+     * 从字符串解析运行模式
+     * 
+     * @param mode 运行模式字符串
+     * @return 运行模式枚举，无法解析时默认为UPDATE
+     */
+    public static RunMode fromString(String mode) {
+        if (mode == null || mode.isEmpty()) {
+            return UPDATE;
+        }
+        
+        try {
+            return valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return UPDATE;
+        }
+    }
+}
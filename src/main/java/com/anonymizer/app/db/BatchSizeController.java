@@ -0,0 +1,110 @@
+package com.anonymizer.app.db;
+
+/**
+ * 决定每次执行的批处理行数和提交间隔
+ *
+ * 固定模式下始终使用配置的批处理大小。自适应模式下根据最近批处理的耗时估算每行耗时（指数加权平均），
+ * 把批处理大小调整到使单次批处理耗时接近目标值；每次调整最多翻倍或减半，并限制在配置的上下限之间。
+ * 提交间隔同样按提交耗时（指数加权平均）调整，使提交耗时约为两次提交之间写入耗时的 {@link #COMMIT_SHARE}：
+ * 提交慢（同步刷盘、远程数据库）时多攒几个批处理再提交，提交快时尽早提交以缩短持锁时间和续跑时重做的行数。
+ * 提交间隔不小于当前的批处理行数，不大于配置的提交间隔。
+ * 每个工作单元创建一个实例，只在一个线程中使用。
+ */
+final class BatchSizeController {
+    /** 新样本在每行耗时估计中的权重 */
+    private static final double SMOOTHING = 0.3;
+    /** 自适应模式下提交耗时与两次提交之间写入耗时的目标比例 */
+    private static final double COMMIT_SHARE = 0.1;
+
+    private final boolean adaptive;
+    private final long targetNanos;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int maxCommitInterval;
+    private int batchSize;
+    private int commitInterval;
+    private double nanosPerRow = -1;
+    private double commitNanos = -1;
+
+    /**
+     * @param batchSize 初始（固定模式下为固定的）批处理行数
+     * @param commitInterval 两次提交之间最少写入的行数，自适应模式下为上限；Integer.MAX_VALUE 表示只在最后提交一次，不调整
+     * @param adaptive 是否按耗时自动调整批处理行数
+     * @param targetMillis 自适应模式下单次批处理的目标耗时（毫秒）
+     * @param minBatchSize 自适应模式下的最小批处理行数
+     * @param maxBatchSize 自适应模式下的最大批处理行数
+     */
+    BatchSizeController(int batchSize, int commitInterval, boolean adaptive, long targetMillis,
+                        int minBatchSize, int maxBatchSize) {
+        this.adaptive = adaptive;
+        this.targetNanos = targetMillis * 1_000_000L;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = Math.max(minBatchSize, maxBatchSize);
+        this.maxCommitInterval = commitInterval;
+        this.batchSize = adaptive ? clamp(batchSize) : batchSize;
+        this.commitInterval = commitInterval == Integer.MAX_VALUE || !adaptive
+                ? commitInterval
+                : Math.min(commitInterval, this.batchSize);
+    }
+
+    /**
+     * 获取下一次批处理的行数
+     *
+     * @return 行数
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 获取两次提交之间最少写入的行数
+     *
+     * @return 行数
+     */
+    int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * 记录一次批处理的行数和耗时，自适应模式下据此调整下一次的批处理行数
+     *
+     * @param rows 批处理行数
+     * @param elapsedNanos 执行耗时（纳秒）
+     */
+    void record(int rows, long elapsedNanos) {
+        if (!adaptive || rows == 0) {
+            return;
+        }
+        double sample = (double) elapsedNanos / rows;
+        nanosPerRow = nanosPerRow < 0 ? sample : nanosPerRow * (1 - SMOOTHING) + sample * SMOOTHING;
+
+        int ideal = clamp((long) (targetNanos / Math.max(nanosPerRow, 1.0)));
+        batchSize = Math.max(batchSize / 2, Math.min(batchSize * 2, ideal));
+        adjustCommitInterval();
+    }
+
+    /**
+     * 记录一次提交的耗时，自适应模式下据此调整提交间隔
+     *
+     * @param elapsedNanos 提交耗时（纳秒）
+     */
+    void recordCommit(long elapsedNanos) {
+        if (!adaptive) {
+            return;
+        }
+        commitNanos = commitNanos < 0 ? elapsedNanos : commitNanos * (1 - SMOOTHING) + elapsedNanos * SMOOTHING;
+        adjustCommitInterval();
+    }
+
+    private void adjustCommitInterval() {
+        if (maxCommitInterval == Integer.MAX_VALUE || nanosPerRow < 0 || commitNanos < 0) {
+            return;
+        }
+        long ideal = (long) (commitNanos / (COMMIT_SHARE * Math.max(nanosPerRow, 1.0)));
+        commitInterval = (int) Math.max(batchSize, Math.min(maxCommitInterval, ideal));
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minBatchSize, Math.min(maxBatchSize, size));
+    }
+}
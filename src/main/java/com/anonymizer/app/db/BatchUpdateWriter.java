@@ -0,0 +1,102 @@
+package com.anonymizer.app.db;
+
+import com.anonymizer.app.metrics.Phase;
+import com.anonymizer.app.metrics.TableMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * 按行地址逐行 UPDATE，批处理大小和提交间隔由 {@link BatchSizeController} 决定，提交后通知最后一行的地址
+ */
+final class BatchUpdateWriter implements RowWriter {
+    private static final Logger logger = LoggerFactory.getLogger(BatchUpdateWriter.class);
+
+    private final Connection connection;
+    private final PreparedStatement pstmt;
+    private final int columnCount;
+    private final RowAddress rowAddress;
+    private final BatchSizeController batchSizeController;
+    private final Consumer<Object> commitListener;
+    private final TableMetrics metrics;
+    private Object lastAddress;
+    private int pending;
+    private int uncommitted;
+
+    /**
+     * @param connection 写连接
+     * @param plan 表的执行计划
+     * @param batchSizeController 批处理大小和提交间隔
+     * @param commitListener 每次提交后以已提交的最大地址调用
+     * @param metrics 记录批处理和提交耗时
+     */
+    BatchUpdateWriter(Connection connection, TablePlan plan, BatchSizeController batchSizeController,
+                      Consumer<Object> commitListener, TableMetrics metrics) throws SQLException {
+        this.connection = connection;
+        this.pstmt = connection.prepareStatement(plan.getUpdateQuery());
+        this.columnCount = plan.getColumnCount();
+        this.rowAddress = plan.getRowAddress();
+        this.batchSizeController = batchSizeController;
+        this.commitListener = commitListener;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(Object address, String[] values) throws SQLException {
+        for (int i = 0; i < columnCount; i++) {
+            pstmt.setString(i + 1, values[i]);
+        }
+        rowAddress.bind(pstmt, columnCount + 1, address);
+        pstmt.addBatch();
+        lastAddress = address;
+
+        if (++pending >= batchSizeController.getBatchSize()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        if (pending > 0) {
+            flush();
+        }
+        if (uncommitted > 0) {
+            commit();
+        }
+        logger.debug("Final batch size {}, commit interval {}", batchSizeController.getBatchSize(),
+                batchSizeController.getCommitInterval());
+    }
+
+    private void flush() throws SQLException {
+        long start = System.nanoTime();
+        pstmt.executeBatch();
+        long elapsed = System.nanoTime() - start;
+        batchSizeController.record(pending, elapsed);
+        metrics.record(Phase.WRITE, elapsed);
+        uncommitted += pending;
+        pending = 0;
+
+        if (uncommitted >= batchSizeController.getCommitInterval()) {
+            commit();
+        }
+    }
+
+    private void commit() throws SQLException {
+        long start = System.nanoTime();
+        connection.commit();
+        long elapsed = System.nanoTime() - start;
+        batchSizeController.recordCommit(elapsed);
+        metrics.record(Phase.COMMIT, elapsed);
+        uncommitted = 0;
+        commitListener.accept(lastAddress);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        pstmt.close();
+    }
+}
@@ -0,0 +1,368 @@
+package com.anonymizer.app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录每个工作单元已提交进度的本地检查点文件
+ *
+ * 文件中保存每个表的主键范围划分（增量模式下还有本次运行的水位列上限）、每个范围最后提交的行地址
+ * （水位，通常是主键）以及已完成的范围。
+ * 中断后以 --resume 重新运行时，已完成的范围被跳过，未完成的范围从水位之后继续（键集分页），
+ * 已经脱敏并提交的行不会被再次处理。
+ *
+ * 写文件时先写临时文件并刷盘，再原子替换，文件始终完整。水位的更新按组写入：文件写入在状态锁之外进行，
+ * 多个工作单元同时提交时，等待中的单元发现自己的水位已被其他单元的写入包含后直接返回，不再各自重写文件。
+ * checkpoint.flushMillis 大于0时水位最多每隔这么长时间写一次，范围的划分和完成状态总是立即写入。
+ */
+final class Checkpoint {
+    private static final Logger logger = LoggerFactory.getLogger(Checkpoint.class);
+
+    private final Path file;
+    private final long flushNanos;
+    private final Properties state = new Properties();
+    /** 写文件的锁，持有期间不持有状态锁（this） */
+    private final Object saveLock = new Object();
+    /** 状态的版本，每次修改加一，由 this 保护 */
+    private long version;
+    /** 已经写入文件的版本，由 saveLock 保护 */
+    private long savedVersion;
+    private long lastSaveNanos;
+
+    private Checkpoint(Path file, long flushMillis) {
+        this.file = file;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+    }
+
+    /**
+     * 创建不记录任何进度的检查点
+     *
+     * @return 检查点
+     */
+    static Checkpoint disabled() {
+        return new Checkpoint(null, 0);
+    }
+
+    /**
+     * 打开检查点文件
+     *
+     * @param file 检查点文件
+     * @param resume true 时读取已有的进度，false 时清空之前的进度
+     * @param flushMillis 水位的最小写入间隔（毫秒），0表示每次提交后都写入
+     * @return 检查点
+     */
+    static Checkpoint open(Path file, boolean resume, long flushMillis) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file, flushMillis);
+        if (resume && Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                checkpoint.state.load(in);
+            }
+            logger.info("Resuming from checkpoint {}", file);
+        } else {
+            if (resume) {
+                logger.warn("Checkpoint {} not found, starting from the beginning", file);
+            }
+            store(checkpoint.state, file, "anonymizer checkpoint");
+        }
+        return checkpoint;
+    }
+
+    /**
+     * 获取之前记录的表的主键范围划分，续跑时必须沿用同样的划分，水位才有意义
+     *
+     * @param tableName 表名
+     * @return 主键范围，没有记录时返回null
+     */
+    synchronized List<KeyRange> getRanges(String tableName) {
+        String count = state.getProperty(tableName + ".ranges");
+        if (count == null) {
+            return null;
+        }
+        List<KeyRange> ranges = new ArrayList<>();
+        for (int i = 0; i < Integer.parseInt(count); i++) {
+            ranges.add(new KeyRange(decode(state.getProperty(key(tableName, i, "lower"))),
+                    decode(state.getProperty(key(tableName, i, "upper")))));
+        }
+        return ranges;
+    }
+
+    /**
+     * 获取与范围划分一起记录的增量水位列上限。续跑时必须沿用这个上限，否则已完成的范围只处理到旧的上限，
+     * 表的增量水位却推进到新的上限，两者之间的行不会再被处理
+     *
+     * @param tableName 表名
+     * @return 水位列上限，没有记录时返回null
+     */
+    synchronized Object getWatermarkTo(String tableName) {
+        return decode(state.getProperty(tableName + ".watermarkTo"));
+    }
+
+    /**
+     * 记录表的主键范围划分
+     *
+     * @param tableName 表名
+     * @param ranges 主键范围
+     * @param watermarkTo 增量模式下本次运行的水位列上限，全量处理时为null
+     */
+    void recordRanges(String tableName, List<KeyRange> ranges, Object watermarkTo) {
+        long target;
+        synchronized (this) {
+            state.setProperty(tableName + ".ranges", String.valueOf(ranges.size()));
+            put(tableName + ".watermarkTo", encode(watermarkTo));
+            for (int i = 0; i < ranges.size(); i++) {
+                put(key(tableName, i, "lower"), encode(ranges.get(i).getLower()));
+                put(key(tableName, i, "upper"), encode(ranges.get(i).getUpper()));
+            }
+            target = ++version;
+        }
+        save(target, true);
+    }
+
+    /**
+     * 获取范围中最后提交的主键
+     *
+     * @param tableName 表名
+     * @param rangeIndex 范围序号
+     * @return 水位，没有提交过时返回null
+     */
+    synchronized Object getWatermark(String tableName, int rangeIndex) {
+        return decode(state.getProperty(key(tableName, rangeIndex, "watermark")));
+    }
+
+    /**
+     * 记录范围中最后提交的主键，每次提交后调用；不限制写入间隔时返回前水位已经写入文件
+     *
+     * @param tableName 表名
+     * @param rangeIndex 范围序号
+     * @param primaryKey 已提交的最大主键
+     * @throws IllegalArgumentException 主键的类型无法保存
+     */
+    void updateWatermark(String tableName, int rangeIndex, Object primaryKey) {
+        String encoded = encode(primaryKey);
+        long target;
+        synchronized (this) {
+            put(key(tableName, rangeIndex, "watermark"), encoded);
+            target = ++version;
+        }
+        save(target, false);
+    }
+
+    synchronized boolean isPushdownDone(String tableName, int rangeIndex) {
+        return state.containsKey(key(tableName, rangeIndex, "pushdown"));
+    }
+
+    void markPushdownDone(String tableName, int rangeIndex) {
+        mark(key(tableName, rangeIndex, "pushdown"), "done");
+    }
+
+    synchronized boolean isDone(String tableName, int rangeIndex) {
+        return state.containsKey(key(tableName, rangeIndex, "done"));
+    }
+
+    void markDone(String tableName, int rangeIndex) {
+        mark(key(tableName, rangeIndex, "done"), "true");
+    }
+
+    /**
+     * 把限制写入间隔时尚未写入的水位写入文件，运行结束时调用
+     */
+    void flush() {
+        long target;
+        synchronized (this) {
+            target = version;
+        }
+        save(target, true);
+    }
+
+    private void mark(String key, String value) {
+        long target;
+        synchronized (this) {
+            state.setProperty(key, value);
+            target = ++version;
+        }
+        save(target, true);
+    }
+
+    private static String key(String tableName, int rangeIndex, String field) {
+        return tableName + "#" + rangeIndex + "." + field;
+    }
+
+    private void put(String key, String value) {
+        if (value == null) {
+            state.remove(key);
+        } else {
+            state.setProperty(key, value);
+        }
+    }
+
+    /**
+     * 主键（或增量水位列）的值带类型前缀保存，续跑时按原类型绑定参数；
+     * 复合主键的 Object[] 保存为 tuple:，其后每个分量为“长度:编码值”
+     *
+     * @throws IllegalArgumentException 值的类型无法按原类型恢复，按字符串保存会在续跑时绑定为错误的类型
+     */
+    static String encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Object[]) {
+            StringBuilder tuple = new StringBuilder("tuple:");
+            for (Object component : (Object[]) value) {
+                String encoded = encode(component);
+                tuple.append(encoded.length()).append(':').append(encoded);
+            }
+            return tuple.toString();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger) {
+            return "long:" + value;
+        }
+        if (value instanceof BigDecimal) {
+            return "decimal:" + ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Timestamp) {
+            return "timestamp:" + value;
+        }
+        if (value instanceof LocalDateTime) {
+            return "timestamp:" + Timestamp.valueOf((LocalDateTime) value);
+        }
+        if (value instanceof Date) {
+            return "date:" + value;
+        }
+        if (value instanceof LocalDate) {
+            return "date:" + Date.valueOf((LocalDate) value);
+        }
+        if (value instanceof UUID) {
+            return "uuid:" + value;
+        }
+        if (value instanceof byte[]) {
+            return "bytes:" + Base64.getEncoder().encodeToString((byte[]) value);
+        }
+        if (value instanceof String || value instanceof Character) {
+            return "string:" + value;
+        }
+        throw new IllegalArgumentException("Cannot checkpoint a key value of type " + value.getClass().getName()
+                + ", supported types are numbers, strings, dates, timestamps, UUIDs and binary values");
+    }
+
+    static Object decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        int colon = value.indexOf(':');
+        String type = value.substring(0, colon);
+        String text = value.substring(colon + 1);
+        switch (type) {
+            case "long":
+                return new BigInteger(text).bitLength() < 64 ? (Object) Long.parseLong(text) : new BigDecimal(text);
+            case "decimal":
+                return new BigDecimal(text);
+            case "timestamp":
+                return Timestamp.valueOf(text);
+            case "date":
+                return Date.valueOf(text);
+            case "uuid":
+                return UUID.fromString(text);
+            case "bytes":
+                return Base64.getDecoder().decode(text);
+            case "tuple":
+                return decodeTuple(text);
+            default:
+                return text;
+        }
+    }
+
+    private static Object[] decodeTuple(String text) {
+        List<Object> components = new ArrayList<>();
+        int pos = 0;
+        while (pos < text.length()) {
+            int colon = text.indexOf(':', pos);
+            int end = colon + 1 + Integer.parseInt(text.substring(pos, colon));
+            components.add(decode(text.substring(colon + 1, end)));
+            pos = end;
+        }
+        return components.toArray();
+    }
+
+    /**
+     * 把状态写入文件，直到文件包含版本 target
+     *
+     * @param force false 时遵守 checkpoint.flushMillis，距上次写入不足该间隔时跳过
+     */
+    private void save(long target, boolean force) {
+        if (file == null) {
+            return;
+        }
+        synchronized (saveLock) {
+            if (savedVersion >= target) {
+                // 等待期间其他线程的写入已经包含了这次修改
+                return;
+            }
+            long now = System.nanoTime();
+            if (!force && flushNanos > 0 && now - lastSaveNanos < flushNanos) {
+                return;
+            }
+            Properties snapshot = new Properties();
+            long snapshotVersion;
+            synchronized (this) {
+                snapshot.putAll(state);
+                snapshotVersion = version;
+            }
+            try {
+                store(snapshot, file, "anonymizer checkpoint");
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write checkpoint " + file, e);
+            }
+            savedVersion = snapshotVersion;
+            lastSaveNanos = now;
+        }
+    }
+
+    /**
+     * 把属性写入临时文件并刷盘，再原子替换目标文件，替换后刷新所在目录，断电后文件也是完整的
+     *
+     * @param properties 属性
+     * @param file 目标文件
+     * @param comments 文件头注释
+     */
+    static void store(Properties properties, Path file, String comments) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            properties.store(Channels.newOutputStream(channel), comments);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // 部分平台（如Windows）不能打开目录，替换本身仍是原子的
+                logger.debug("Cannot sync directory {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.anonymizer.app.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 按配置前缀（如 database、target）打开数据库连接
+ * 
+ * pool.enabled 为 true（默认）时连接来自 HikariCP 连接池：借出前校验连接是否可用，失效的连接被丢弃并重新建立，
+ * 关闭连接即归还到池中（自动提交和只读等状态会被复位）。连接池在第一次打开连接时创建，{@link #close()} 时关闭。
+ * 默认池大小为 2 * parallel.workers + 1，每个工作单元同时使用一个读连接和一个写连接，另有一个用于规划。
+ * 
+ * write.rewriteBatches 为 true（默认）时，按数据库类型打开驱动的批处理改写（MySQL 的 rewriteBatchedStatements、
+ * PostgreSQL 的 reWriteBatchedInserts），第一次打开连接时检查驱动是否实际启用。pool.statementCacheSize 大于0时
+ * 同时打开驱动的预编译语句缓存。URL 中显式配置了的属性以 URL 为准。
+ * 
+ * 除了 {@link DatabaseType} 中的数据库，还可以通过 {@link #registerDialect} 注册其他类型的方言和驱动，
+ * 例如基准测试使用的嵌入式数据库；注册的类型优先于内置类型。
+ */
+public class ConnectionFactory implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionFactory.class);
+    /** 通过 {@link #registerDialect} 注册的类型，键为小写的类型名 */
+    private static final Map<String, RegisteredDialect> registeredDialects = new ConcurrentHashMap<>();
+    
+    private final String prefix;
+    private final String url;
+    private final String typeName;
+    private final DatabaseType databaseType;
+    private final String driverClassName;
+    private final DatabaseDialect dialect;
+    private final Properties connectionProperties = new Properties();
+    private final boolean rewriteBatches;
+    private final AtomicBoolean verified = new AtomicBoolean();
+    private final Properties config;
+    private final boolean pooled;
+    private HikariDataSource dataSource;
+    
+    /**
+     * @param config 配置属性
+     * @param prefix 配置前缀，读取 &lt;prefix&gt;.type、&lt;prefix&gt;.url、&lt;prefix&gt;.username 和 &lt;prefix&gt;.password
+     */
+    public ConnectionFactory(Properties config, String prefix) {
+        this.config = config;
+        this.prefix = prefix;
+        this.url = config.getProperty(prefix + ".url");
+        this.typeName = config.getProperty(prefix + ".type", "mysql");
+        RegisteredDialect registered = registeredDialects.get(typeName.toLowerCase(Locale.ROOT));
+        if (registered != null) {
+            this.databaseType = null;
+            this.driverClassName = registered.driverClassName;
+            this.dialect = registered.factory.get();
+        } else {
+            this.databaseType = DatabaseType.fromString(typeName);
+            this.driverClassName = databaseType.getDriverClassName();
+            this.dialect = DatabaseDialect.create(databaseType);
+        }
+        this.rewriteBatches = Boolean.parseBoolean(config.getProperty("write.rewriteBatches", "true"));
+        this.pooled = Boolean.parseBoolean(config.getProperty("pool.enabled", "true"));
+        
+        setIfPresent(connectionProperties, "user", config.getProperty(prefix + ".username"));
+        setIfPresent(connectionProperties, "password", config.getProperty(prefix + ".password"));
+        String rewriteProperty = dialect.getBatchRewriteProperty();
+        if (rewriteBatches && rewriteProperty != null && !isSetInUrl(rewriteProperty)) {
+            connectionProperties.setProperty(rewriteProperty, "true");
+        }
+        int statementCacheSize = getInt("pool.statementCacheSize", 256);
+        if (statementCacheSize > 0) {
+            Properties cacheProperties = dialect.getStatementCacheProperties(statementCacheSize);
+            for (String property : cacheProperties.stringPropertyNames()) {
+                if (!isSetInUrl(property)) {
+                    connectionProperties.setProperty(property, cacheProperties.getProperty(property));
+                }
+            }
+        }
+    }
+    
+    /**
+     * 注册一种不在 {@link DatabaseType} 中的数据库类型，之后 &lt;prefix&gt;.type 配置为该类型名（不区分大小写）
+     * 的连接使用注册的方言和驱动。需要在创建使用该类型的服务之前调用
+     * 
+     * @param typeName 类型名
+     * @param driverClassName 驱动类名
+     * @param factory 创建方言实例
+     */
+    public static void registerDialect(String typeName, String driverClassName,
+                                       Supplier<? extends DatabaseDialect> factory) {
+        registeredDialects.put(typeName.toLowerCase(Locale.ROOT), new RegisteredDialect(driverClassName, factory));
+    }
+    
+    /**
+     * @return 数据库类型，通过 {@link #registerDialect} 注册的类型返回null
+     */
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+    
+    /**
+     * @return 按数据库类型创建的方言
+     */
+    public DatabaseDialect getDialect() {
+        return dialect;
+    }
+    
+    /**
+     * 打开（或从连接池借出）一个数据库连接（关闭自动提交），用完后关闭即归还
+     * 
+     * @return 数据库连接
+     */
+    public Connection open() throws SQLException {
+        Connection conn;
+        if (pooled) {
+            conn = getDataSource().getConnection();
+        } else {
+            try {
+                Class.forName(driverClassName);
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("Database driver not found", e);
+            }
+            conn = DriverManager.getConnection(url, connectionProperties);
+            conn.setAutoCommit(false);
+        }
+        if (verified.compareAndSet(false, true)) {
+            verifyBatchRewrite(conn);
+        }
+        return conn;
+    }
+    
+    /**
+     * 关闭连接池，已借出的连接会在归还时关闭
+     */
+    @Override
+    public synchronized void close() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+    
+    private synchronized HikariDataSource getDataSource() throws SQLException {
+        if (dataSource == null) {
+            HikariConfig poolConfig = new HikariConfig();
+            poolConfig.setPoolName("anonymizer-" + prefix);
+            poolConfig.setDriverClassName(driverClassName);
+            poolConfig.setJdbcUrl(url);
+            poolConfig.setDataSourceProperties(connectionProperties);
+            poolConfig.setAutoCommit(false);
+            
+            int defaultSize = 2 * Math.max(1, getInt("parallel.workers", 1)) + 1;
+            int maxSize = Math.max(1, getInt("pool.maxSize", defaultSize));
+            if (maxSize < defaultSize) {
+                logger.warn("pool.maxSize={} is below {} (2 connections per worker plus one), workers may wait "
+                        + "for connections", maxSize, defaultSize);
+            }
+            poolConfig.setMaximumPoolSize(maxSize);
+            poolConfig.setMinimumIdle(Math.min(maxSize, Math.max(0, getInt("pool.minIdle", maxSize))));
+            poolConfig.setConnectionTimeout(getInt("pool.connectionTimeoutMs", 30000));
+            poolConfig.setValidationTimeout(getInt("pool.validationTimeoutMs", 5000));
+            poolConfig.setIdleTimeout(getInt("pool.idleTimeoutMs", 600000));
+            poolConfig.setMaxLifetime(getInt("pool.maxLifetimeMs", 1800000));
+            poolConfig.setKeepaliveTime(getInt("pool.keepaliveMs", 0));
+            try {
+                dataSource = new HikariDataSource(poolConfig);
+            } catch (RuntimeException e) {
+                throw new SQLException("Cannot create connection pool for " + prefix + ": " + e.getMessage(), e);
+            }
+            logger.info("Connection pool for {} created (max {} connections)", prefix, maxSize);
+        }
+        return dataSource;
+    }
+    
+    /**
+     * 检查驱动是否按配置启用了批处理改写，未启用时只记录警告
+     */
+    private void verifyBatchRewrite(Connection conn) {
+        String rewriteProperty = dialect.getBatchRewriteProperty();
+        if (!rewriteBatches || rewriteProperty == null) {
+            return;
+        }
+        try {
+            if (dialect.isBatchRewriteEnabled(conn)) {
+                logger.info("Driver batch rewriting enabled for {} ({}=true)", typeName, rewriteProperty);
+            } else {
+                logger.warn("Driver batch rewriting is disabled for {}: {} is not in effect", typeName,
+                        rewriteProperty);
+            }
+        } catch (SQLException e) {
+            logger.warn("Cannot verify {} on {} connection: {}", rewriteProperty, typeName, e.getMessage());
+        }
+    }
+    
+    private boolean isSetInUrl(String property) {
+        return url != null && url.toLowerCase(Locale.ROOT).contains(property.toLowerCase(Locale.ROOT) + "=");
+    }
+    
+    private int getInt(String key, int defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {}: {}, using {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    private static void setIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+    
+    /**
+     * 通过 {@link #registerDialect} 注册的驱动和方言
+     */
+    private static final class RegisteredDialect {
+        final String driverClassName;
+        final Supplier<? extends DatabaseDialect> factory;
+        
+        RegisteredDialect(String driverClassName, Supplier<? extends DatabaseDialect> factory) {
+            this.driverClassName = driverClassName;
+            this.factory = factory;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.anonymizer.app.db;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+import com.anonymizer.app.anonymizer.RandomSources;
+import com.anonymizer.app.anonymizer.RuleResolver;
+import com.anonymizer.app.config.ConfigLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 复制模式：从源库读取数据，脱敏后插入目标库，源库只读不写
+ *
+ * 每个表由一条流水线处理：读线程在源库上流式读取并按批打包，多个转换线程对批次应用脱敏规则，
+ * 写线程把批次插入目标库并提交。各阶段之间通过有界队列传递批次，下游处理不过来时上游阻塞（背压），
+ * 读取、脱敏和写入可以同时进行。目标库中的表需要预先创建。
+ */
+public class CopyService {
+    private static final Logger logger = LoggerFactory.getLogger(CopyService.class);
+
+    /** 表示上游已经结束的标记批次 */
+    private static final RowBatch END = new RowBatch(-1, null);
+
+    private final ConfigLoader configLoader;
+    private final ConnectionFactory sourceFactory;
+    private final ConnectionFactory targetFactory;
+    private final DatabaseDialect sourceDialect;
+    private final DatabaseDialect targetDialect;
+    private final RuleResolver ruleResolver;
+    private final Long randomSeed;
+
+    public CopyService(ConfigLoader configLoader, Properties config) {
+        this.configLoader = configLoader;
+        this.sourceFactory = new ConnectionFactory(config, "database");
+        this.targetFactory = new ConnectionFactory(config, "target");
+        this.sourceDialect = sourceFactory.getDialect();
+        this.targetDialect = targetFactory.getDialect();
+        this.ruleResolver = new RuleResolver(configLoader);
+        this.randomSeed = configLoader.getRandomSeed();
+    }
+
+    /**
+     * 复制所有配置的表，单个表失败不影响其他表
+     */
+    public void copyAllTables() throws SQLException {
+        List<String> tables = configLoader.getTables();
+        long startTime = System.currentTimeMillis();
+        logger.info("Starting copy of {} tables with {} transform worker(s)", tables.size(),
+                configLoader.getCopyTransformWorkers());
+
+        List<TableResult> results = new ArrayList<>();
+        try {
+            for (String tableName : tables) {
+                long tableStart = System.currentTimeMillis();
+                try {
+                    long rows = copyTable(tableName);
+                    logger.info("Copied table {}: {} rows", tableName, rows);
+                    results.add(TableResult.success(tableName, rows, System.currentTimeMillis() - tableStart));
+                } catch (SQLException | RuntimeException e) {
+                    logger.error("Error copying table {}: {}", tableName, e.getMessage());
+                    results.add(TableResult.failure(tableName, System.currentTimeMillis() - tableStart, e));
+                }
+            }
+        } finally {
+            sourceFactory.close();
+            targetFactory.close();
+        }
+
+        TableResult.logSummary(logger, results, System.currentTimeMillis() - startTime);
+        ruleResolver.logCacheStats();
+        TableResult.throwIfFailed(results);
+    }
+
+    /**
+     * 复制一个表。copy.truncateTarget=true 时先清空目标表，复制失败后再清空已提交的部分数据，
+     * 否则失败的表在目标库中保留失败前已提交的批次，重新复制前需要手动清理
+     *
+     * @param tableName 表名
+     * @return 写入目标库的行数
+     */
+    private long copyTable(String tableName) throws SQLException {
+        boolean truncate = configLoader.isCopyTruncateTarget();
+        try (Connection source = sourceFactory.open();
+             Connection target = targetFactory.open()) {
+            if (truncate) {
+                truncateTarget(target, tableName);
+            }
+            try {
+                return copyRows(tableName, source, target);
+            } catch (SQLException | RuntimeException e) {
+                if (truncate) {
+                    cleanUpTarget(tableName, e);
+                } else {
+                    logger.warn("Target table {} keeps the batches committed before the failure, "
+                            + "clear it before copying again or set copy.truncateTarget=true", tableName);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 用读取、转换、写入三个阶段的流水线复制一个表的数据
+     *
+     * @return 写入目标库的行数
+     */
+    private long copyRows(String tableName, Connection source, Connection target) throws SQLException {
+        Map<String, AnonymizationRule> columnRules = ruleResolver.getColumnRules(tableName);
+        int workers = configLoader.getCopyTransformWorkers();
+        int batchSize = configLoader.getCopyBatchSize();
+        BlockingQueue<RowBatch> transformQueue = new ArrayBlockingQueue<>(configLoader.getCopyQueueSize());
+        BlockingQueue<RowBatch> writeQueue = new ArrayBlockingQueue<>(configLoader.getCopyQueueSize());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        try (PreparedStatement stmt = sourceDialect.prepareStreamingQuery(source,
+                sourceDialect.getSelectAllQuery(tableName), configLoader.getFetchSize())) {
+            source.setReadOnly(true);
+            ResultSet rs = stmt.executeQuery();
+
+            // 按结果集的列顺序找到每列的脱敏规则，不需要脱敏的列保持原值
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            String[] columns = new String[columnCount];
+            AnonymizationRule[] rules = new AnonymizationRule[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columns[i] = metaData.getColumnName(i + 1);
+                for (Map.Entry<String, AnonymizationRule> entry : columnRules.entrySet()) {
+                    if (entry.getKey().equalsIgnoreCase(columns[i])) {
+                        rules[i] = entry.getValue();
+                    }
+                }
+            }
+
+            AtomicInteger threadCounter = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(workers + 1, runnable -> {
+                Thread thread = new Thread(runnable, "copy-" + tableName + "-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            boolean completed = false;
+            try {
+                executor.submit(() -> readBatches(rs, rules, batchSize, transformQueue, workers, failure));
+                for (int i = 0; i < workers; i++) {
+                    executor.submit(() -> transformBatches(tableName, rules, transformQueue, writeQueue, failure));
+                }
+
+                long rows = writeBatches(target, targetDialect.getInsertQuery(tableName, columns), writeQueue, workers,
+                        failure);
+                completed = true;
+                source.commit();
+                return rows;
+            } finally {
+                // 在 try-with-resources 关闭查询语句和连接之前停止读线程和转换线程
+                stopPipeline(executor, completed ? null : stmt);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while copying table " + tableName, e);
+        }
+    }
+
+    /**
+     * 停止流水线的线程。出错时读线程可能阻塞在网络读取中，先取消查询再中断线程，
+     * 等待所有线程退出后调用方才能关闭查询语句和归还源库连接
+     *
+     * @param stmt 需要取消的查询，所有批次都已写入时为null
+     */
+    private static void stopPipeline(ExecutorService executor, PreparedStatement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                logger.debug("Cannot cancel copy query: {}", e.getMessage());
+            }
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Copy pipeline threads did not stop within a minute");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void truncateTarget(Connection target, String tableName) throws SQLException {
+        try (Statement stmt = target.createStatement()) {
+            stmt.execute(targetDialect.getTruncateQuery(tableName));
+        }
+        target.commit();
+        logger.info("Truncated target table {}", tableName);
+    }
+
+    /**
+     * 复制失败后清空目标表中已提交的部分数据。写连接可能已经断开，使用新的连接；
+     * 清空失败时把错误附加到原始错误上
+     */
+    private void cleanUpTarget(String tableName, Exception failure) {
+        try (Connection target = targetFactory.open()) {
+            truncateTarget(target, tableName);
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Cannot truncate target table {} after the failed copy: {}", tableName, e.getMessage());
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * 读阶段：流式读取源表并按批放入转换队列，结束时为每个转换线程放入一个结束标记
+     */
+    private void readBatches(ResultSet rs, AnonymizationRule[] rules, int batchSize,
+                             BlockingQueue<RowBatch> transformQueue, int workers, AtomicReference<Exception> failure) {
+        try {
+            long sequence = 0;
+            List<Object[]> rows = new ArrayList<>(batchSize);
+            while (rs.next()) {
+                Object[] row = new Object[rules.length];
+                for (int i = 0; i < rules.length; i++) {
+                    row[i] = rules[i] != null ? rs.getString(i + 1) : rs.getObject(i + 1);
+                }
+                rows.add(row);
+
+                if (rows.size() == batchSize) {
+                    transformQueue.put(new RowBatch(sequence++, rows));
+                    rows = new ArrayList<>(batchSize);
+                }
+            }
+            if (!rows.isEmpty()) {
+                transformQueue.put(new RowBatch(sequence, rows));
+            }
+            for (int i = 0; i < workers; i++) {
+                transformQueue.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * 转换阶段：对批次中需要脱敏的列应用规则，处理完后放入写队列
+     */
+    private void transformBatches(String tableName, AnonymizationRule[] rules, BlockingQueue<RowBatch> transformQueue,
+                                  BlockingQueue<RowBatch> writeQueue, AtomicReference<Exception> failure) {
+        try {
+            while (true) {
+                RowBatch batch = transformQueue.take();
+                if (batch == END) {
+                    writeQueue.put(END);
+                    return;
+                }
+
+                if (randomSeed != null) {
+                    // 按批次序号派生随机序列，结果与批次被哪个线程处理无关
+                    RandomSources.bind(RandomSources.seeded(randomSeed, tableName + "#" + batch.sequence));
+                }
+                for (Object[] row : batch.rows) {
+                    for (int i = 0; i < rules.length; i++) {
+                        if (rules[i] != null && row[i] != null) {
+                            row[i] = rules[i].anonymize((String) row[i]);
+                        }
+                    }
+                }
+                writeQueue.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            RandomSources.unbind();
+        }
+    }
+
+    /**
+     * 写阶段：在调用线程中把批次插入目标库，每个批次提交一次，直到收到所有转换线程的结束标记
+     *
+     * @return 写入的行数
+     */
+    private long writeBatches(Connection target, String insertQuery, BlockingQueue<RowBatch> writeQueue, int workers,
+                              AtomicReference<Exception> failure) throws SQLException, InterruptedException {
+        long rows = 0;
+        int finishedWorkers = 0;
+        try (PreparedStatement pstmt = target.prepareStatement(insertQuery)) {
+            while (finishedWorkers < workers) {
+                checkFailure(failure);
+                RowBatch batch = writeQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    continue;
+                }
+                if (batch == END) {
+                    finishedWorkers++;
+                    continue;
+                }
+
+                for (Object[] row : batch.rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        pstmt.setObject(i + 1, row[i]);
+                    }
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                target.commit();
+                rows += batch.rows.size();
+            }
+            checkFailure(failure);
+            return rows;
+        } catch (SQLException e) {
+            target.rollback();
+            throw e;
+        }
+    }
+
+    private static void checkFailure(AtomicReference<Exception> failure) throws SQLException {
+        Exception e = failure.get();
+        if (e instanceof SQLException) {
+            throw (SQLException) e;
+        } else if (e != null) {
+            throw new SQLException("Copy pipeline failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在流水线各阶段之间传递的一批行
+     */
+    private static final class RowBatch {
+        private final long sequence;
+        private final List<Object[]> rows;
+
+        RowBatch(long sequence, List<Object[]> rows) {
+            this.sequence = sequence;
+            this.rows = rows;
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package com.anonymizer.app.db;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
 /**
  * 数据库方言接口，用于处理不同数据库的SQL差异
  */
@@ -22,23 +28,213 @@ public interface DatabaseDialect {
     String getSelectAllQuery(String tableName);
     
     /**
-     * 获取更新语句
+     * 获取只读取行地址和需要脱敏的列、并按行地址排序的查询SQL
+     * 
+     * 结果集的前 {@link RowAddress#getWidth()} 列为行地址，之后依次为 columns 中的列。
+     * 
+     * @param tableName 表名
+     * @param columns 需要脱敏的列
+     * @param rowAddress 行地址
+     * @param condition 查询条件（可以包含参数占位符），为null时查询全表
+     * @return SQL语句
+     */
+    String getSelectQuery(String tableName, String[] columns, RowAddress rowAddress, String condition);
+    
+    /**
+     * 创建流式读取的查询语句，结果集按批从服务端获取，而不是一次性加载到内存中
+     * 
+     * 流式读取会占用连接直到结果集关闭，调用方应使用专门的读连接，不要在同一连接上执行更新或提交。
+     * 
+     * @param connection 读连接（非自动提交）
+     * @param sql 查询语句
+     * @param fetchSize 每次从服务端获取的行数
+     * @return 预编译语句
+     */
+    PreparedStatement prepareStreamingQuery(Connection connection, String sql, int fetchSize) throws SQLException;
+    
+    /**
+     * 获取查询主键最小值和最大值的SQL
+     * 
+     * @param tableName 表名
+     * @param primaryKeyColumn 主键列名
+     * @return SQL语句，结果第一列为最小值，第二列为最大值
+     */
+    String getKeyRangeQuery(String tableName, String primaryKeyColumn);
+    
+    /**
+     * 获取从数据库统计信息中读取主键分布直方图边界的SQL
      * 
      * @param tableName 表名
-     * @param columns 需要更新的列
      * @param primaryKeyColumn 主键列名
+     * @return SQL语句，每行一个按升序排列的边界值；数据库不提供直方图时返回null
+     */
+    String getKeyHistogramQuery(String tableName, String primaryKeyColumn);
+    
+    /**
+     * 获取按行地址更新一行的语句，参数依次为 columns 中的列和行地址
+     * 
+     * @param tableName 表名
+     * @param columns 需要更新的列
+     * @param rowAddress 行地址
      * @return SQL语句
      */
-    String getUpdateQuery(String tableName, String[] columns, String primaryKeyColumn);
+    String getUpdateQuery(String tableName, String[] columns, RowAddress rowAddress);
     
     /**
-     * 获取主键查询语句
+     * 获取插入语句
      * 
      * @param tableName 表名
+     * @param columns 插入的列
      * @return SQL语句
      */
+    String getInsertQuery(String tableName, String[] columns);
+    
+    /**
+     * 获取清空表的语句，复制模式下清空目标表
+     * 
+     * @param tableName 表名
+     * @return SQL语句
+     */
+    String getTruncateQuery(String tableName);
+    
+    /**
+     * 获取在数据库端完成脱敏的SQL表达式
+     * 
+     * 表达式必须与JDBC中的规则一样逐字符独立取随机值，同一个值中相同的字符不能总是替换为同一个字符。
+     * 
+     * @param ruleType 脱敏规则类型（见 AnonymizationRules）
+     * @param column 列名
+     * @param maxLength 列声明的最大长度，未知或不限长度时为0
+     * @return 计算脱敏值的SQL表达式，该数据库无法用SQL表达此规则（或无法处理这个长度）时返回null
+     */
+    String getAnonymizationExpression(String ruleType, String column, int maxLength);
+    
+    /**
+     * 获取在数据库端直接脱敏的集合更新语句
+     * 
+     * @param tableName 表名
+     * @param columns 需要更新的列
+     * @param expressions 与 columns 一一对应的脱敏表达式
+     * @param condition 更新条件（可以包含参数占位符），为null时更新全表
+     * @return SQL语句
+     */
+    String getExpressionUpdateQuery(String tableName, String[] columns, String[] expressions, String condition);
+    
+    /**
+     * 规划阶段为每个使用暂存表的表执行一次，在数据库中准备所有工作单元共用的暂存表结构
+     * 
+     * 暂存表是永久模式对象的数据库（Oracle 的全局临时表）在这里创建，已经存在且列一致时直接复用；
+     * 暂存表只存在于会话中的数据库什么也不做。
+     * 
+     * @param connection 规划使用的连接
+     * @param stagingTable 暂存表名
+     * @param tableName 原表名
+     * @param columns 需要脱敏的列
+     * @param rowAddress 行地址
+     */
+    void prepareStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                             RowAddress rowAddress) throws SQLException;
+    
+    /**
+     * 在当前会话中准备工作单元使用的空暂存表，包含行地址列（见 {@link RowAddress#getStagingColumns()}）和需要脱敏的列，
+     * 列类型与原表一致。暂存表在会话中创建的数据库在这里创建，已由 {@link #prepareStagingTable} 创建的只清空本会话中的行
+     * 
+     * @param connection 写连接
+     * @param stagingTable 暂存表名
+     * @param tableName 原表名
+     * @param columns 需要脱敏的列
+     * @param rowAddress 行地址
+     */
+    void createStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                            RowAddress rowAddress) throws SQLException;
+    
+    /**
+     * 使用数据库的批量装载接口把行写入暂存表
+     * 
+     * @param connection 写连接
+     * @param stagingTable 暂存表名
+     * @param columns 暂存表的列，前几列为行地址
+     * @param rows 与 columns 一一对应的行数据
+     */
+    void loadStagingTable(Connection connection, String stagingTable, String[] columns, List<Object[]> rows)
+            throws SQLException;
+    
+    /**
+     * 获取用暂存表中的值关联更新原表的SQL
+     * 
+     * @param tableName 原表名
+     * @param stagingTable 暂存表名
+     * @param columns 需要更新的列
+     * @param rowAddress 行地址
+     * @return SQL语句
+     */
+    String getStagingUpdateQuery(String tableName, String stagingTable, String[] columns, RowAddress rowAddress);
+    
+    /**
+     * 工作单元结束时删除会话中的暂存表；共用的暂存表不删除，只清空本会话中的行
+     * 
+     * @param connection 写连接
+     * @param stagingTable 暂存表名
+     */
+    void dropStagingTable(Connection connection, String stagingTable) throws SQLException;
+    
+    /**
+     * 获取主键查询语句
+     * 
+     * @param tableName 表名
+     * @return SQL语句，每行一个主键列，按列在主键中的顺序排列；返回null时使用JDBC元数据API
+     */
     String getPrimaryKeyQuery(String tableName);
     
+    /**
+     * 获取一次读取多个表的列和主键的目录查询
+     * 
+     * 结果集每行一个列：表名、列名、列在表中的序号、列在主键中的序号（不是主键列时为NULL）。
+     * 
+     * @param tableNames 表名，数量不超过 {@link SchemaCatalog#BATCH_TABLES}
+     * @return SQL语句，返回null时逐表查询
+     */
+    String getCatalogQuery(List<String> tableNames);
+    
+    /**
+     * 获取表结构版本的查询，结果为单个值，任何一个表的DDL发生变化后结果随之改变
+     * 
+     * @param tableNames 表名，数量不超过 {@link SchemaCatalog#BATCH_TABLES}
+     * @return SQL语句，数据库无法低成本判断表结构是否变化时返回null（不使用缓存文件）
+     */
+    String getCatalogVersionQuery(List<String> tableNames);
+    
+    /**
+     * 获取数据库的物理行地址，按地址更新时不经过主键索引
+     * 
+     * @return 行地址，数据库没有可供客户端使用的物理地址时返回null
+     */
+    RowAddress getPhysicalRowAddress();
+    
+    /**
+     * 获取让驱动把批处理改写为多值或多语句请求的连接属性名
+     * 
+     * @return 连接属性名，驱动不需要（或不支持）改写时返回null
+     */
+    String getBatchRewriteProperty();
+    
+    /**
+     * 检查连接上的驱动是否实际启用了批处理改写
+     * 
+     * @param connection 数据库连接
+     * @return 是否启用
+     */
+    boolean isBatchRewriteEnabled(Connection connection) throws SQLException;
+    
+    /**
+     * 获取开启驱动端预编译语句缓存的连接属性。连接池中的连接被多个工作单元复用，
+     * 同一条语句只在每个连接上解析和预编译一次
+     * 
+     * @param cacheSize 每个连接缓存的语句数
+     * @return 连接属性，驱动没有可配置的语句缓存时返回空的属性
+     */
+    Properties getStatementCacheProperties(int cacheSize);
+    
     /**
      * 创建方言实例
      * 
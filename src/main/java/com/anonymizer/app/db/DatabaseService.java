@@ -2,54 +2,89 @@ package com.anonymizer.app.db;
 
 import com.anonymizer.app.anonymizer.AnonymizationRule;
 import com.anonymizer.app.anonymizer.AnonymizationRules;
+import com.anonymizer.app.anonymizer.RandomSources;
+import com.anonymizer.app.anonymizer.RuleResolver;
 import com.anonymizer.app.config.ConfigLoader;
+import com.anonymizer.app.metrics.Phase;
+import com.anonymizer.app.metrics.PhaseRecorder;
+import com.anonymizer.app.metrics.RunMetrics;
+import com.anonymizer.app.metrics.TableMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Service for database operations
  */
 public class DatabaseService {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseService.class);
+    /** 逐行处理时每隔多少行把行数、读取字节数和按行记录的耗时累加到表的指标 */
+    private static final int METRICS_FLUSH_ROWS = 1024;
     
     private final ConfigLoader configLoader;
     private Connection connection;
-    private Properties config;
+    private final ConnectionFactory connectionFactory;
     private DatabaseDialect dialect;
+    private final Long randomSeed;
+    private final RuleResolver ruleResolver;
+    private Checkpoint checkpoint = Checkpoint.disabled();
+    private WatermarkStore watermarks;
+    private SchemaCatalog schema = SchemaCatalog.empty();
+    private RunMetrics metrics = new RunMetrics(false);
+    /** 流水线读阶段和脱敏阶段使用的执行器，在 runAllTables 期间有效 */
+    private ExecutorService pipelineExecutor;
     
     public DatabaseService(ConfigLoader configLoader, Properties config) {
         this.configLoader = configLoader;
-        this.config = config;
-        String dbType = config.getProperty("database.type", "mysql");
-        this.dialect = DatabaseDialect.create(DatabaseType.fromString(dbType));
+        this.connectionFactory = new ConnectionFactory(config, "database");
+        this.dialect = connectionFactory.getDialect();
+        this.randomSeed = configLoader.getRandomSeed();
+        this.ruleResolver = new RuleResolver(configLoader);
     }
     
     /**
      * Connect to the database
      */
     public void connect() throws SQLException {
-        String url = config.getProperty("database.url");
-        String username = config.getProperty("database.username");
-        String password = config.getProperty("database.password");
-        
-        try {
-            Class.forName(DatabaseType.fromString(config.getProperty("database.type", "mysql")).getDriverClassName());
-            connection = DriverManager.getConnection(url, username, password);
-            connection.setAutoCommit(false);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("Database driver not found", e);
-        }
+        connection = openConnection();
+    }
+    
+    /**
+     * 打开一个新的数据库连接（关闭自动提交）
+     * 
+     * @return 数据库连接
+     */
+    private Connection openConnection() throws SQLException {
+        return connectionFactory.open();
     }
     
     /**
-     * Close the database connection
+     * Close the database connection and the connection pool
      */
     public void disconnect() {
         if (connection != null) {
@@ -60,31 +95,674 @@ public class DatabaseService {
                 logger.error("Error closing database connection", e);
             }
         }
+        connectionFactory.close();
     }
     
     /**
      * 脱敏所有配置的表
+     * 
+     * 每个表先按主键切分为若干范围（见 {@link #planTable(Connection, String)}），每个范围作为一个工作单元。
+     * 当 parallel.workers 大于1时，工作单元在线程池中并发处理，每个单元使用独立的连接、读游标和事务；
+     * 单个表失败不会影响其他表，所有表处理完成后输出汇总信息。
      */
     public void anonymizeAllTables() throws SQLException {
+        anonymizeAllTables(false);
+    }
+    
+    /**
+     * 脱敏所有配置的表，并把每个工作单元已提交的进度记录到检查点文件
+     * 
+     * @param resume true 时从检查点继续：跳过已完成的范围，未完成的范围从最后提交的主键之后开始
+     */
+    public void anonymizeAllTables(boolean resume) throws SQLException {
         List<String> tables = configLoader.getTables();
-        int totalTables = tables.size();
-        int processedTables = 0;
-        
-        logger.info("Starting anonymization of {} tables", totalTables);
+        long startTime = System.currentTimeMillis();
+        if (configLoader.isCheckpointEnabled()) {
+            long flushMillis = configLoader.getCheckpointFlushMillis();
+            if (flushMillis > 0 && configLoader.isDeterministic()) {
+                // 续跑时重做已提交的行会把脱敏结果再脱敏一次，与其他表中同一原值的结果不再一致
+                logger.warn("checkpoint.flushMillis is ignored in deterministic mode, "
+                        + "watermarks are written on every commit");
+                flushMillis = 0;
+            }
+            try {
+                checkpoint = Checkpoint.open(Paths.get(configLoader.getCheckpointFile()), resume, flushMillis);
+            } catch (IOException e) {
+                throw new SQLException("Cannot open checkpoint " + configLoader.getCheckpointFile(), e);
+            }
+        } else if (resume) {
+            logger.warn("Checkpoints are disabled (checkpoint.enabled=false), --resume has no effect");
+        }
+        try {
+            watermarks = WatermarkStore.open(Paths.get(configLoader.getWatermarkFile()));
+        } catch (IOException e) {
+            throw new SQLException("Cannot read incremental watermarks " + configLoader.getWatermarkFile(), e);
+        }
         
+        metrics = new RunMetrics(configLoader.isMetricsJmxEnabled());
+        try {
+            runAllTables(tables, startTime);
+        } finally {
+            checkpoint.flush();
+            metrics.close();
+        }
+    }
+    
+    /**
+     * 规划并运行所有表的工作单元，输出汇总信息和运行指标报告
+     * 
+     * @param tables 表名
+     * @param startTime 运行开始时间（毫秒）
+     */
+    private void runAllTables(List<String> tables, long startTime) throws SQLException {
+        schema = loadSchema(tables);
+        Map<String, List<TableResult>> partsByTable = new LinkedHashMap<>();
+        Map<String, TablePlan> plans = new LinkedHashMap<>();
+        List<WorkUnit> units = new ArrayList<>();
         for (String tableName : tables) {
+            List<TableResult> parts = new ArrayList<>();
+            partsByTable.put(tableName, parts);
             try {
-                List<String> columnsToAnonymize = configLoader.getColumnsToAnonymize(tableName);
-                anonymizeTable(tableName, columnsToAnonymize);
-                processedTables++;
-                logger.info("Processed table {}: {}/{}", tableName, processedTables, totalTables);
-            } catch (SQLException e) {
-                logger.error("Error processing table {}: {}", tableName, e.getMessage());
-                throw e;
+                List<WorkUnit> tableUnits = planTable(connection, tableName);
+                if (!tableUnits.isEmpty()) {
+                    plans.put(tableName, tableUnits.get(0).getPlan());
+                }
+                units.addAll(tableUnits);
+            } catch (SQLException | RuntimeException e) {
+                logger.error("Error planning table {}: {}", tableName, e.getMessage());
+                parts.add(TableResult.failure(tableName, 0, e));
+            }
+        }
+        
+        int workers = Math.min(configLoader.getParallelWorkers(), Math.max(1, units.size()));
+        logger.info("Starting anonymization of {} tables ({} work units) with {} worker(s)",
+                tables.size(), units.size(), workers);
+        
+        List<TableResult> unitResults;
+        if (configLoader.isVirtualThreads() && WorkerThreads.isVirtualAvailable()) {
+            reserveCarrierThreads(tables, workers);
+        }
+        pipelineExecutor = newPipelineExecutor();
+        try {
+            if (workers > 1) {
+                unitResults = runInParallel(units, workers);
+            } else {
+                unitResults = new ArrayList<>();
+                for (WorkUnit unit : units) {
+                    unitResults.add(runUnitWithRetry(unit, null));
+                }
+            }
+        } finally {
+            pipelineExecutor.shutdownNow();
+        }
+        
+        for (TableResult unitResult : unitResults) {
+            partsByTable.get(unitResult.getTableName()).add(unitResult);
+        }
+        List<TableResult> results = new ArrayList<>();
+        IOException watermarkError = null;
+        for (Map.Entry<String, List<TableResult>> entry : partsByTable.entrySet()) {
+            TableResult result = TableResult.combine(entry.getKey(), entry.getValue());
+            results.add(result);
+            TablePlan plan = plans.get(entry.getKey());
+            if (result.isSuccess() && plan != null && plan.getWatermarkTo() != null) {
+                try {
+                    watermarks.put(entry.getKey(), plan.getWatermarkTo());
+                } catch (IOException e) {
+                    // 继续记录其他表的水位并输出汇总，最后再让运行失败
+                    logger.error("Cannot write incremental watermark of {}: {}", entry.getKey(), e.getMessage());
+                    watermarkError = e;
+                }
+            }
+        }
+        
+        TableResult.logSummary(logger, results, System.currentTimeMillis() - startTime);
+        ruleResolver.logCacheStats();
+        metrics.logSummary();
+        String reportFile = configLoader.getMetricsReportFile();
+        if (reportFile != null) {
+            try {
+                metrics.writeReport(Paths.get(reportFile));
+            } catch (IOException e) {
+                logger.warn("Cannot write metrics report {}: {}", reportFile, e.getMessage());
+            }
+        }
+        TableResult.throwIfFailed(results);
+        if (watermarkError != null) {
+            throw new SQLException("Cannot write incremental watermarks " + configLoader.getWatermarkFile(),
+                    watermarkError);
+        }
+    }
+    
+    /**
+     * 用批量目录查询读取所有表的列和主键，schema.cache 打开时优先使用仍然有效的缓存文件
+     * 
+     * 读取失败不影响运行，各表退回到逐表查询。
+     * 
+     * @param tables 表名
+     * @return 表结构目录
+     */
+    private SchemaCatalog loadSchema(List<String> tables) {
+        Path cacheFile = configLoader.isSchemaCacheEnabled() ? Paths.get(configLoader.getSchemaCacheFile()) : null;
+        try {
+            return SchemaCatalog.load(connection, dialect, tables, cacheFile);
+        } catch (SQLException e) {
+            logger.warn("Cannot read the schema catalog, looking up tables one by one: {}", e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                logger.debug("Rollback after catalog query failed", rollbackError);
+            }
+            return SchemaCatalog.empty();
+        }
+    }
+    
+    /**
+     * 为表生成执行计划和工作单元：确定行地址、绑定各列的脱敏规则，并按 &lt;table&gt;.chunks 切分主键范围
+     * 
+     * 复合主键按第一列切分，物理行地址不切分。
+     * 续跑时沿用检查点中记录的范围划分，跳过已完成的范围，未完成的范围从水位之后开始。
+     * 
+     * @param conn 数据库连接
+     * @param tableName 表名
+     * @return 工作单元列表，表已全部完成或没有需要脱敏的列时为空
+     */
+    private List<WorkUnit> planTable(Connection conn, String tableName) throws SQLException {
+        TablePlan plan = createTablePlan(conn, tableName);
+        if (plan == null) {
+            logger.info("Table {} has no column with an anonymization rule, skipping", tableName);
+            return new ArrayList<>();
+        }
+        List<KeyRange> ranges = checkpoint.getRanges(tableName);
+        if (ranges == null) {
+            String splitColumn = plan.getRowAddress().getSplitColumn();
+            ranges = splitColumn != null
+                    ? splitKeyRange(conn, tableName, splitColumn, configLoader.getTableChunks(tableName))
+                    : List.of(KeyRange.unbounded());
+            checkpoint.recordRanges(tableName, ranges, plan.getWatermarkTo());
+        }
+        
+        List<WorkUnit> units = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            if (checkpoint.isDone(tableName, i)) {
+                continue;
+            }
+            KeyRange range = ranges.get(i);
+            Object watermark = checkpoint.getWatermark(tableName, i);
+            if (watermark != null) {
+                KeyRange remaining = new KeyRange(watermark, range.getUpper());
+                logger.info("Resuming {} range {} as {}", tableName, range, remaining);
+                range = remaining;
+            }
+            units.add(new WorkUnit(plan, range, i, ranges.size(), watermark));
+        }
+        if (units.isEmpty()) {
+            logger.info("Table {} already completed according to the checkpoint, skipping", tableName);
+        } else if (plan.getColumnCount() > 0 && configLoader.getWriteMode(tableName) == WriteMode.STAGING) {
+            String[] columns = new String[plan.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = plan.getColumn(i);
+            }
+            dialect.prepareStagingTable(conn, getStagingTableName(tableName), tableName, columns, plan.getRowAddress());
+            conn.commit();
+        }
+        return units;
+    }
+    
+    /**
+     * 生成表的执行计划，只在这里读取一次列和列类型配置
+     * 
+     * 类型没有对应脱敏规则的列（原样返回的默认规则）不会改变数据，不进入查询和更新语句。
+     * 
+     * @param conn 数据库连接
+     * @param tableName 表名
+     * @return 执行计划，没有需要脱敏的列时返回null
+     */
+    private TablePlan createTablePlan(Connection conn, String tableName) throws SQLException {
+        Map<String, String> columnTypes = configLoader.getColumnTypes(tableName);
+        Map<String, AnonymizationRule> columnRules = ruleResolver.getColumnRules(tableName);
+        boolean pushdown = isPushdownAllowed(tableName);
+        Map<String, Integer> columnLengths = pushdown ? getColumnLengths(conn, tableName) : Map.of();
+        
+        List<String> columns = new ArrayList<>();
+        List<AnonymizationRule> rules = new ArrayList<>();
+        List<String> pushdownColumns = new ArrayList<>();
+        List<String> pushdownExpressions = new ArrayList<>();
+        for (String column : columnRules.keySet()) {
+            String columnType = columnTypes.get(column);
+            if (!AnonymizationRules.hasRule(columnType)) {
+                logger.info("Column {}.{} has no anonymization rule for type {}, leaving it unchanged",
+                        tableName, column, columnType);
+                continue;
+            }
+            String expression = pushdown && columnType != null
+                    ? dialect.getAnonymizationExpression(columnType, column, columnLengths.getOrDefault(column, 0))
+                    : null;
+            if (expression != null) {
+                pushdownColumns.add(column);
+                pushdownExpressions.add(expression);
+            } else {
+                columns.add(column);
+                rules.add(columnRules.get(column));
+            }
+        }
+        if (columns.isEmpty() && pushdownColumns.isEmpty()) {
+            return null;
+        }
+        
+        RowAddress rowAddress = getRowAddress(conn, tableName);
+        String[] columnArray = columns.toArray(new String[0]);
+        String updateQuery = columnArray.length > 0
+                ? dialect.getUpdateQuery(tableName, columnArray, rowAddress)
+                : null;
+        TablePlan plan = new TablePlan(tableName, rowAddress, columnArray, rules.toArray(new AnonymizationRule[0]),
+                updateQuery, pushdownColumns.toArray(new String[0]), pushdownExpressions.toArray(new String[0]));
+        String watermarkColumn = configLoader.getWatermarkColumn(tableName);
+        if (watermarkColumn != null) {
+            // 续跑时沿用第一次规划时记录的上限，与已完成的范围处理过的行一致
+            Object watermarkTo = checkpoint.getRanges(tableName) != null
+                    ? checkpoint.getWatermarkTo(tableName)
+                    : null;
+            if (watermarkTo == null) {
+                watermarkTo = getWatermarkUpperBound(conn, tableName, watermarkColumn);
+            }
+            plan = plan.withWatermark(watermarkColumn, watermarks.get(tableName), watermarkTo);
+        }
+        logger.debug("Plan for table {}: {}", tableName, plan);
+        return plan;
+    }
+    
+    /**
+     * 读取表中各列声明的最大长度，用于生成按位置展开的下推表达式
+     * 
+     * @param conn 数据库连接
+     * @param tableName 表名
+     * @return 列名（不区分大小写）到最大长度的映射，不限长度的列为0
+     */
+    private Map<String, Integer> getColumnLengths(Connection conn, String tableName) throws SQLException {
+        Map<String, Integer> lengths = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(dialect.getTableStructureQuery(tableName))) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                lengths.put(metaData.getColumnName(i), Math.max(0, metaData.getPrecision(i)));
+            }
+        }
+        return lengths;
+    }
+    
+    /**
+     * 读取增量水位列当前的最大值，作为本次运行的上限
+     * 
+     * 上限在规划时确定，运行期间新写入或修改的行留给下一次运行。水位列由数据库在每次 UPDATE 时自动更新
+     * （如MySQL的 ON UPDATE CURRENT_TIMESTAMP 或更新触发器）时，本次脱敏的行会在下一次运行中被再次处理。
+     * 
+     * @param conn 数据库连接
+     * @param tableName 表名
+     * @param watermarkColumn 水位列
+     * @return 最大值，表为空或水位列全为空时返回null
+     */
+    private Object getWatermarkUpperBound(Connection conn, String tableName, String watermarkColumn)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(dialect.getKeyRangeQuery(tableName, watermarkColumn))) {
+            return rs.next() ? rs.getObject(2) : null;
+        }
+    }
+    
+    /**
+     * 判断指定表是否可以在数据库端脱敏。数据库的随机函数无法复现，确定性模式和配置了随机种子时不下推
+     * 
+     * @param tableName 表名
+     * @return 可以下推返回true
+     */
+    private boolean isPushdownAllowed(String tableName) {
+        if (!configLoader.isPushdownEnabled(tableName)) {
+            return false;
+        }
+        if (ruleResolver.isDeterministic() || randomSeed != null) {
+            logger.info("Pushdown disabled for table {}: results must be reproducible", tableName);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 将表按主键切分为若干连续范围
+     * 
+     * 优先使用数据库统计信息中的直方图边界，使各范围的行数大致相等；没有直方图时按最小值和最大值均匀切分。
+     * 只有整数主键才能切分，其他类型的主键整个表作为一个范围。
+     * 
+     * @param conn 数据库连接
+     * @param tableName 表名
+     * @param primaryKeyColumn 主键列名
+     * @param chunks 期望的范围数量
+     * @return 按主键升序排列的范围
+     */
+    private List<KeyRange> splitKeyRange(Connection conn, String tableName, String primaryKeyColumn, int chunks)
+            throws SQLException {
+        if (chunks <= 1) {
+            return List.of(KeyRange.unbounded());
+        }
+        
+        Long min;
+        Long max;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(dialect.getKeyRangeQuery(tableName, primaryKeyColumn))) {
+            if (!rs.next()) {
+                return List.of(KeyRange.unbounded());
+            }
+            min = toIntegralKey(rs.getObject(1));
+            max = toIntegralKey(rs.getObject(2));
+        }
+        if (min == null || max == null || min.equals(max)) {
+            logger.debug("Primary key {} of table {} cannot be split, processing as a single range",
+                    primaryKeyColumn, tableName);
+            return List.of(KeyRange.unbounded());
+        }
+        
+        TreeSet<Long> cuts = new TreeSet<>();
+        List<Long> histogram = getKeyHistogram(conn, tableName, primaryKeyColumn);
+        if (histogram.size() > 2) {
+            for (int i = 1; i < chunks; i++) {
+                cuts.add(histogram.get((int) ((long) i * (histogram.size() - 1) / chunks)));
+            }
+        } else {
+            BigInteger span = BigInteger.valueOf(max).subtract(BigInteger.valueOf(min));
+            for (int i = 1; i < chunks; i++) {
+                BigInteger offset = span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(chunks));
+                cuts.add(BigInteger.valueOf(min).add(offset).longValue());
+            }
+        }
+        cuts.removeIf(cut -> cut < min || cut >= max);
+        
+        List<KeyRange> ranges = new ArrayList<>();
+        Long lower = null;
+        for (Long cut : cuts) {
+            ranges.add(new KeyRange(lower, cut));
+            lower = cut;
+        }
+        ranges.add(new KeyRange(lower, null));
+        logger.info("Split table {} on {} into {} ranges ({})", tableName, primaryKeyColumn, ranges.size(),
+                histogram.size() > 2 ? "histogram" : "min/max");
+        return ranges;
+    }
+    
+    /**
+     * 读取主键分布直方图的边界值
+     * 
+     * @return 升序排列的边界值，数据库不提供直方图或读取失败时返回空列表
+     */
+    private List<Long> getKeyHistogram(Connection conn, String tableName, String primaryKeyColumn) {
+        String histogramQuery = dialect.getKeyHistogramQuery(tableName, primaryKeyColumn);
+        List<Long> bounds = new ArrayList<>();
+        if (histogramQuery == null) {
+            return bounds;
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(histogramQuery)) {
+            while (rs.next()) {
+                Long bound = toIntegralKey(rs.getObject(1));
+                if (bound != null) {
+                    bounds.add(bound);
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            logger.debug("Histogram for {}.{} not available: {}", tableName, primaryKeyColumn, e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                logger.debug("Rollback after histogram query failed", rollbackError);
+            }
+            bounds.clear();
+        }
+        bounds.sort(null);
+        return bounds;
+    }
+    
+    /**
+     * 将主键值转换为long，非整数类型返回null
+     */
+    private static Long toIntegralKey(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).longValue();
+        }
+        if (value instanceof BigDecimal) {
+            try {
+                return ((BigDecimal) value).longValueExact();
+            } catch (ArithmeticException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 在创建第一个虚拟线程之前按同时访问数据库的线程数调整载体线程数。每个借用连接的工作单元在写入时、
+     * 开启流水线时它的读阶段也在驱动中等待；驱动在 synchronized 块中等待网络时会占住载体线程
+     * 
+     * @param tables 表名
+     * @param workers 同时借用连接的工作单元数
+     */
+    private void reserveCarrierThreads(List<String> tables, int workers) {
+        boolean pipelined = tables.stream().anyMatch(configLoader::isPipelineEnabled);
+        int threads = pipelined ? 2 * workers : workers;
+        int parallelism = WorkerThreads.reserveCarrierThreads(threads);
+        if (parallelism < threads) {
+            logger.warn("jdk.virtualThreadScheduler.parallelism={} is below the {} threads that may wait in the "
+                    + "database driver, drivers that block inside synchronized code can stall all work units",
+                    parallelism, threads);
+        } else {
+            logger.info("Virtual thread scheduler uses {} carrier threads", parallelism);
+        }
+    }
+    
+    /**
+     * 创建流水线的读阶段和脱敏阶段共用的执行器，整个运行期间复用
+     * 
+     * 虚拟线程模式下每个阶段是一个虚拟线程，否则使用按需创建、空闲60秒后回收的平台线程。
+     * 各阶段互相等待，执行器不能限制线程数，否则一个单元的读阶段可能排在其他单元正在等待的脱敏阶段之后；
+     * 同时运行的阶段数不超过 parallel.workers ×（pipeline.transformWorkers + 1）。
+     * 
+     * @return 执行器
+     */
+    private ExecutorService newPipelineExecutor() {
+        if (configLoader.isVirtualThreads() && WorkerThreads.isVirtualAvailable()) {
+            return WorkerThreads.newVirtualThreadExecutor("anonymizer-stage-");
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "anonymizer-stage-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * 并发处理工作单元，每个单元使用独立的数据库连接
+     * 
+     * 默认使用 workers 个平台线程。parallel.threads=virtual 且运行在Java 21上时，每个工作单元启动一个虚拟线程，
+     * 所有单元同时开始，由一个 workers 个许可的信号量限制同时借用连接的单元数；等待数据库的线程不占用载体线程，
+     * 重试前的等待期间也会归还许可。
+     * 
+     * @param units 工作单元
+     * @param workers 工作线程数（虚拟线程模式下为同时访问数据库的单元数）
+     * @return 各工作单元的处理结果，顺序与输入一致
+     */
+    private List<TableResult> runInParallel(List<WorkUnit> units, int workers) throws SQLException {
+        ExecutorService executor;
+        Semaphore permits;
+        if (configLoader.isVirtualThreads() && WorkerThreads.isVirtualAvailable()) {
+            executor = WorkerThreads.newVirtualThreadExecutor("anonymizer-unit-");
+            permits = new Semaphore(workers);
+            logger.info("Running {} work units on virtual threads, at most {} at a time in the database",
+                    units.size(), workers);
+        } else {
+            if (configLoader.isVirtualThreads()) {
+                logger.warn("Virtual threads need Java 21 and a build with the java21 profile, using {} platform threads",
+                        workers);
             }
+            AtomicInteger threadCounter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "anonymizer-worker-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            permits = null;
         }
         
-        logger.info("Completed anonymization of {} tables", processedTables);
+        try {
+            List<Future<TableResult>> futures = new ArrayList<>();
+            for (WorkUnit unit : units) {
+                futures.add(executor.submit(() -> runUnitWithRetry(unit, permits)));
+            }
+            
+            List<TableResult> results = new ArrayList<>();
+            for (Future<TableResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for table workers", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Table worker failed unexpectedly", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * 从连接池借用写连接处理一个工作单元
+     * 
+     * 连接中断、死锁或等待连接超时等可重试的错误发生时，未提交的批次已经回滚，已提交的部分已经记录为检查点水位；
+     * 归还连接并等待 retry.backoffMs（每次翻倍）后借用新的连接，从水位之后重新处理该单元的剩余部分，
+     * 最多重试 retry.maxAttempts 次。
+     * 
+     * @param unit 工作单元
+     * @param permits 每次尝试前获取的数据库访问许可，为null时不限制
+     * @return 处理结果，耗时包括所有尝试，行数只包括最后一次尝试处理的行
+     */
+    private TableResult runUnitWithRetry(WorkUnit unit, Semaphore permits) {
+        long startTime = System.currentTimeMillis();
+        int maxRetries = configLoader.getRetryMaxAttempts();
+        long backoffMillis = configLoader.getRetryBackoffMillis();
+        WorkUnit attempt = unit;
+        for (int retry = 0; ; retry++) {
+            TableResult result;
+            try {
+                if (permits != null) {
+                    permits.acquire();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return TableResult.failure(unit.getTableName(), System.currentTimeMillis() - startTime,
+                        new SQLException("Interrupted while waiting to run " + unit, e));
+            }
+            try (Connection workerConnection = openConnection()) {
+                result = runUnit(workerConnection, attempt);
+            } catch (SQLException e) {
+                logger.error("Error opening connection for {}: {}", attempt, e.getMessage());
+                result = TableResult.failure(unit.getTableName(), 0, e);
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+            if (result.isSuccess()) {
+                return retry == 0
+                        ? result
+                        : TableResult.success(unit.getTableName(), result.getRows(), System.currentTimeMillis() - startTime);
+            }
+            if (retry >= maxRetries || !isRetryable(result.getError())) {
+                return result;
+            }
+            
+            long delay = backoffMillis << Math.min(retry, 10);
+            logger.warn("Retrying {} in {} ms (attempt {} of {}) after: {}", unit, delay, retry + 2, maxRetries + 1,
+                    result.getError().getMessage());
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            Object watermark = checkpoint.getWatermark(unit.getTableName(), unit.getRangeIndex());
+            if (watermark != null) {
+                attempt = new WorkUnit(unit.getPlan(), new KeyRange(watermark, unit.getRange().getUpper()),
+                        unit.getRangeIndex(), unit.getRangeCount(), watermark);
+            }
+        }
+    }
+    
+    /**
+     * 工作单元的随机序列名：表名#范围序号。从水位续跑（重试或 --resume）时再加上 @水位，
+     * 续跑部分的结果只取决于水位，与第几次尝试无关；但与一次完整运行中这些行的结果不同
+     */
+    private static String seedKey(WorkUnit unit) {
+        String key = unit.getTableName() + "#" + unit.getRangeIndex();
+        return unit.getResumedFrom() == null ? key : key + "@" + Checkpoint.encode(unit.getResumedFrom());
+    }
+    
+    /**
+     * 判断错误是否可以通过换一个连接重试解决：连接异常（SQLState 08）、事务回滚（SQLState 40，如死锁）、
+     * 超时（SQLState HYT），以及驱动标记为瞬时或可恢复的错误。批处理错误的原因可能在 getNextException 中
+     */
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                SQLException sqlError = (SQLException) cause;
+                String sqlState = sqlError.getSQLState();
+                if (sqlState != null && (sqlState.startsWith("08") || sqlState.startsWith("40")
+                        || sqlState.startsWith("HYT"))) {
+                    return true;
+                }
+                if (sqlError.getNextException() != null && isRetryable(sqlError.getNextException())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 在指定连接上处理一个工作单元，捕获异常并转换为处理结果
+     * 
+     * 读取使用单独打开的只读连接进行流式读取，更新和提交在指定连接上执行。
+     * 
+     * @param conn 用于更新的数据库连接
+     * @param unit 工作单元
+     * @return 处理结果
+     */
+    private TableResult runUnit(Connection conn, WorkUnit unit) {
+        long startTime = System.currentTimeMillis();
+        TableMetrics tableMetrics = metrics.table(unit.getTableName());
+        tableMetrics.unitStarted();
+        if (randomSeed != null) {
+            // 每个工作单元使用独立的随机序列，结果与线程调度顺序无关
+            RandomSources.bind(RandomSources.seeded(randomSeed, seedKey(unit)));
+        }
+        try (Connection readConnection = openConnection()) {
+            readConnection.setReadOnly(true);
+            long rows = anonymizeTable(readConnection, conn, unit, tableMetrics);
+            readConnection.commit();
+            checkpoint.markDone(unit.getTableName(), unit.getRangeIndex());
+            logger.info("Processed {}: {} rows", unit, rows);
+            return TableResult.success(unit.getTableName(), rows, System.currentTimeMillis() - startTime);
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Error processing {}: {}", unit, e.getMessage());
+            return TableResult.failure(unit.getTableName(), System.currentTimeMillis() - startTime, e);
+        } finally {
+            tableMetrics.unitFinished();
+            RandomSources.unbind();
+        }
     }
     
     /**
@@ -94,6 +772,9 @@ public class DatabaseService {
      * @return 列名列表
      */
     public List<String> getTableColumns(String tableName) throws SQLException {
+        if (schema.contains(tableName)) {
+            return schema.getColumns(tableName);
+        }
         List<String> columns = new ArrayList<>();
         try (Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(dialect.getTableStructureQuery(tableName))) {
@@ -106,85 +787,474 @@ public class DatabaseService {
     }
     
     /**
-     * 脱敏指定表中的数据
+     * 脱敏一个工作单元（表中的一个主键范围）中的数据
      * 
-     * @param tableName 表名
-     * @param columnsToAnonymize 需要脱敏的列
+     * @param readConnection 用于流式读取的连接
+     * @param conn 用于更新和提交的连接
+     * @param unit 工作单元
+     * @param tableMetrics 表的运行指标
      * @return 处理的行数
      */
-    private void anonymizeTable(String tableName, List<String> columnsToAnonymize) throws SQLException {
-        String primaryKeyColumn = getPrimaryKeyColumn(tableName);
-        String[] columns = columnsToAnonymize.toArray(new String[0]);
-        String updateQuery = dialect.getUpdateQuery(tableName, columns, primaryKeyColumn);
+    private long anonymizeTable(Connection readConnection, Connection conn, WorkUnit unit, TableMetrics tableMetrics)
+            throws SQLException {
+        TablePlan plan = unit.getPlan();
+        long rows = 0;
+        if (plan.hasPushdown() && !checkpoint.isPushdownDone(unit.getTableName(), unit.getRangeIndex())) {
+            rows = anonymizeInDatabase(conn, unit, tableMetrics);
+            checkpoint.markPushdownDone(unit.getTableName(), unit.getRangeIndex());
+            if (plan.getColumnCount() == 0) {
+                tableMetrics.addRows(rows);
+            }
+        }
+        if (plan.getColumnCount() > 0) {
+            long transformed = configLoader.isPipelineEnabled(unit.getTableName())
+                    ? anonymizeRowsPipelined(readConnection, conn, unit, tableMetrics)
+                    : anonymizeRows(readConnection, conn, unit, tableMetrics);
+            rows = Math.max(rows, transformed);
+        }
+        return rows;
+    }
+    
+    /**
+     * 用一条集合更新语句在数据库端脱敏工作单元中可以下推的列
+     * 
+     * @param conn 用于更新和提交的连接
+     * @param unit 工作单元
+     * @param tableMetrics 表的运行指标
+     * @return 更新的行数
+     */
+    private long anonymizeInDatabase(Connection conn, WorkUnit unit, TableMetrics tableMetrics) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(unit.getPlan().getPushdownQuery(dialect, unit.getRange()))) {
+            unit.getPlan().bind(pstmt, unit.getRange());
+            long start = System.nanoTime();
+            long rows = pstmt.executeUpdate();
+            long committing = System.nanoTime();
+            tableMetrics.record(Phase.WRITE, committing - start);
+            conn.commit();
+            tableMetrics.record(Phase.COMMIT, System.nanoTime() - committing);
+            return rows;
+        } catch (SQLException e) {
+            rollbackAfter(conn, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 逐行读取工作单元中的数据，在JDBC端脱敏后批量更新
+     * 
+     * 每行的读取（游标前进和取列值，第一行还包括执行查询）和脱敏分别计时；行数和读取字节数每
+     * {@link #METRICS_FLUSH_ROWS} 行累加一次到表的指标中。
+     * 
+     * @param readConnection 用于流式读取的连接
+     * @param conn 用于更新和提交的连接
+     * @param unit 工作单元
+     * @param tableMetrics 表的运行指标
+     * @return 处理的行数
+     */
+    private long anonymizeRows(Connection readConnection, Connection conn, WorkUnit unit, TableMetrics tableMetrics)
+            throws SQLException {
+        TablePlan plan = unit.getPlan();
+        RowAddress rowAddress = plan.getRowAddress();
+        String selectQuery = plan.getSelectQuery(dialect, unit.getRange());
+        int columnCount = plan.getColumnCount();
+        AnonymizationRule[] rules = new AnonymizationRule[columnCount];
+        int[] valueIndexes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            rules[i] = plan.getRule(i);
+            valueIndexes[i] = plan.getValueIndex(i);
+        }
+        String[] originals = new String[columnCount];
+        String[] values = new String[columnCount];
+        PhaseRecorder recorder = tableMetrics.newRecorder();
         
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(dialect.getSelectAllQuery(tableName));
-             PreparedStatement pstmt = connection.prepareStatement(updateQuery)) {
+        try (PreparedStatement stmt = dialect.prepareStreamingQuery(readConnection, selectQuery, configLoader.getFetchSize());
+             RowWriter writer = createRowWriter(conn, unit, tableMetrics)) {
+            plan.bind(stmt, unit.getRange());
+            String lockQuery = rowAddress.getLockQuery(unit.getTableName());
+            if (lockQuery != null) {
+                // 先在写连接上锁表，再开始读取，读到的地址在本工作单元提交之前保持有效
+                try (Statement lockStmt = conn.createStatement()) {
+                    lockStmt.execute(lockQuery);
+                }
+            }
+            long readStart = System.nanoTime();
+            ResultSet rs = stmt.executeQuery();
             
-            int batchSize = 0;
+            long rows = 0;
+            long bytesRead = 0;
             while (rs.next()) {
-                int paramIndex = 1;
-                for (String column : columnsToAnonymize) {
-                    String originalValue = rs.getString(column);
-                    String anonymizedValue = anonymizeValue(originalValue, getAnonymizationRule(tableName, column));
-                    pstmt.setString(paramIndex++, anonymizedValue);
-                }
-                pstmt.setObject(paramIndex, rs.getObject(primaryKeyColumn));
-                pstmt.addBatch();
+                for (int i = 0; i < columnCount; i++) {
+                    originals[i] = rs.getString(valueIndexes[i]);
+                    bytesRead += TableMetrics.utf8Length(originals[i]);
+                }
+                Object address = rowAddress.read(rs);
+                long transformStart = System.nanoTime();
+                recorder.record(Phase.READ, transformStart - readStart);
+                
+                for (int i = 0; i < columnCount; i++) {
+                    values[i] = anonymizeValue(originals[i], rules[i]);
+                }
+                recorder.record(Phase.TRANSFORM, System.nanoTime() - transformStart);
                 
-                if (++batchSize % 1000 == 0) {
-                    pstmt.executeBatch();
-                    connection.commit();
+                writer.write(address, values);
+                if (++rows % METRICS_FLUSH_ROWS == 0) {
+                    tableMetrics.addRows(METRICS_FLUSH_ROWS);
+                    tableMetrics.addBytesRead(bytesRead);
+                    recorder.flush();
+                    bytesRead = 0;
+                }
+                readStart = System.nanoTime();
+            }
+            writer.finish();
+            tableMetrics.addRows(rows % METRICS_FLUSH_ROWS);
+            tableMetrics.addBytesRead(bytesRead);
+            return rows;
+        } catch (SQLException e) {
+            rollbackAfter(conn, e);
+            throw e;
+        } finally {
+            recorder.flush();
+        }
+    }
+    
+    /**
+     * 用读取、脱敏、写入三个阶段的流水线处理工作单元中的数据，结果与 {@link #anonymizeRows} 相同
+     * 
+     * 读线程在读连接上流式读取，pipeline.transformWorkers 个脱敏线程应用规则，调用线程在写连接上按读取顺序
+     * 批量更新并提交，各阶段之间通过 {@link RowRing} 传递行。网络读取、规则计算和写入往返同时进行，
+     * 单元的耗时接近最慢的阶段而不是三者之和；各阶段的耗时在各自的线程中计时，不包括等待其他阶段的时间。
+     * 
+     * @param readConnection 用于流式读取的连接
+     * @param conn 用于更新和提交的连接
+     * @param unit 工作单元
+     * @param tableMetrics 表的运行指标
+     * @return 处理的行数
+     */
+    private long anonymizeRowsPipelined(Connection readConnection, Connection conn, WorkUnit unit,
+                                        TableMetrics tableMetrics) throws SQLException {
+        TablePlan plan = unit.getPlan();
+        RowAddress rowAddress = plan.getRowAddress();
+        String selectQuery = plan.getSelectQuery(dialect, unit.getRange());
+        int columnCount = plan.getColumnCount();
+        AnonymizationRule[] rules = new AnonymizationRule[columnCount];
+        int[] valueIndexes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            rules[i] = plan.getRule(i);
+            valueIndexes[i] = plan.getValueIndex(i);
+        }
+        int workers = configLoader.getPipelineTransformWorkers();
+        RowRing ring = new RowRing(configLoader.getPipelineRingSize(), columnCount, workers);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        
+        try (PreparedStatement stmt = dialect.prepareStreamingQuery(readConnection, selectQuery, configLoader.getFetchSize());
+             RowWriter writer = createRowWriter(conn, unit, tableMetrics)) {
+            plan.bind(stmt, unit.getRange());
+            String lockQuery = rowAddress.getLockQuery(unit.getTableName());
+            if (lockQuery != null) {
+                // 先在写连接上锁表，再开始读取，读到的地址在本工作单元提交之前保持有效
+                try (Statement lockStmt = conn.createStatement()) {
+                    lockStmt.execute(lockQuery);
                 }
             }
             
-            if (batchSize % 1000 != 0) {
-                pstmt.executeBatch();
-                connection.commit();
+            CountDownLatch stages = new CountDownLatch(workers + 1);
+            boolean completed = false;
+            try {
+                startStage(stages, () -> readRows(stmt, rowAddress, valueIndexes, ring, tableMetrics, failure));
+                for (int i = 0; i < workers; i++) {
+                    int worker = i;
+                    startStage(stages, () -> transformRows(unit, rules, ring, worker, workers, tableMetrics, failure));
+                }
+                long rows = writeRows(writer, ring, unit, tableMetrics, failure);
+                completed = true;
+                writer.finish();
+                return rows;
+            } finally {
+                stopPipeline(ring, stages, completed ? null : stmt);
             }
         } catch (SQLException e) {
-            connection.rollback();
+            rollbackAfter(conn, e);
             throw e;
         }
     }
     
     /**
-     * 获取表的主键列名
-     * 
-     * @param tableName 表名
-     * @return 主键列名，如果没有找到则返回null
+     * 在共用的执行器中启动一个阶段，阶段结束时（包括出错和中止）计数减一
      */
-    private String getPrimaryKeyColumn(String tableName) throws SQLException {
-        String primaryKeyQuery = dialect.getPrimaryKeyQuery(tableName);
-        if (primaryKeyQuery != null) {
-            try (Statement stmt = connection.createStatement();
-                 ResultSet rs = stmt.executeQuery(primaryKeyQuery)) {
-                if (rs.next()) {
-                    return rs.getString(1);
+    private void startStage(CountDownLatch stages, Runnable stage) {
+        try {
+            pipelineExecutor.execute(() -> {
+                try {
+                    stage.run();
+                } finally {
+                    stages.countDown();
                 }
+            });
+        } catch (RuntimeException e) {
+            stages.countDown();
+            throw e;
+        }
+    }
+    
+    /**
+     * 读阶段：执行查询并按序号把行放入环形缓冲区，等待空闲槽位的时间不计入读取耗时
+     */
+    private void readRows(PreparedStatement stmt, RowAddress rowAddress, int[] valueIndexes, RowRing ring,
+                          TableMetrics tableMetrics, AtomicReference<Exception> failure) {
+        boolean finished = false;
+        PhaseRecorder recorder = tableMetrics.newRecorder();
+        try {
+            long sequence = 0;
+            long bytesRead = 0;
+            RowRing.Slot slot = ring.claim(sequence);
+            long readStart = System.nanoTime();
+            ResultSet rs = stmt.executeQuery();
+            while (slot != null && rs.next()) {
+                for (int i = 0; i < valueIndexes.length; i++) {
+                    slot.originals[i] = rs.getString(valueIndexes[i]);
+                    bytesRead += TableMetrics.utf8Length(slot.originals[i]);
+                }
+                slot.address = rowAddress.read(rs);
+                recorder.record(Phase.READ, System.nanoTime() - readStart);
+                ring.publish(sequence);
+                
+                if (++sequence % METRICS_FLUSH_ROWS == 0) {
+                    tableMetrics.addBytesRead(bytesRead);
+                    recorder.flush();
+                    bytesRead = 0;
+                }
+                slot = ring.claim(sequence);
+                readStart = System.nanoTime();
             }
-        } else {
-            // 使用JDBC元数据API获取主键
-            DatabaseMetaData metaData = connection.getMetaData();
-            try (ResultSet rs = metaData.getPrimaryKeys(null, null, tableName)) {
-                if (rs.next()) {
-                    return rs.getString("COLUMN_NAME");
+            tableMetrics.addBytesRead(bytesRead);
+            if (slot != null) {
+                ring.finish(sequence);
+                finished = true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            if (!finished) {
+                ring.abort();
+            }
+            recorder.flush();
+        }
+    }
+    
+    /**
+     * 脱敏阶段：处理序号除以 workers 余 worker 的行
+     * 
+     * 配置了随机数种子时，第一个脱敏线程使用与顺序处理相同的随机序列，其他线程使用由线程编号派生的序列，
+     * 行按序号固定地分配给线程，因此结果只取决于数据和 pipeline.transformWorkers，与线程调度无关
+     */
+    private void transformRows(WorkUnit unit, AnonymizationRule[] rules, RowRing ring, int worker, int workers,
+                               TableMetrics tableMetrics, AtomicReference<Exception> failure) {
+        boolean finished = false;
+        if (randomSeed != null) {
+            String key = seedKey(unit);
+            RandomSources.bind(RandomSources.seeded(randomSeed, worker == 0 ? key : key + "#" + worker));
+        }
+        PhaseRecorder recorder = tableMetrics.newRecorder();
+        try {
+            long sequence = worker;
+            long transformed = 0;
+            RowRing.Slot slot;
+            while ((slot = ring.awaitPublished(sequence)) != null) {
+                long transformStart = System.nanoTime();
+                for (int i = 0; i < rules.length; i++) {
+                    slot.values[i] = anonymizeValue(slot.originals[i], rules[i]);
+                }
+                recorder.record(Phase.TRANSFORM, System.nanoTime() - transformStart);
+                ring.markTransformed(worker, sequence);
+                sequence += workers;
+                if (++transformed % METRICS_FLUSH_ROWS == 0) {
+                    recorder.flush();
                 }
             }
+            finished = !ring.isAborted();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            if (!finished) {
+                ring.abort();
+            }
+            recorder.flush();
+            RandomSources.unbind();
+        }
+    }
+    
+    /**
+     * 写阶段：在调用线程中按序号顺序写入脱敏后的行，直到读取结束且所有行都已写入
+     * 
+     * @return 写入的行数
+     */
+    private long writeRows(RowWriter writer, RowRing ring, WorkUnit unit, TableMetrics tableMetrics,
+                           AtomicReference<Exception> failure) throws SQLException {
+        long rows = 0;
+        RowRing.Slot slot;
+        while ((slot = ring.awaitTransformed(rows)) != null) {
+            writer.write(slot.address, slot.values);
+            ring.release(rows);
+            if (++rows % METRICS_FLUSH_ROWS == 0) {
+                tableMetrics.addRows(METRICS_FLUSH_ROWS);
+            }
+        }
+        tableMetrics.addRows(rows % METRICS_FLUSH_ROWS);
+        
+        Exception error = failure.get();
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (ring.isAborted()) {
+            throw new SQLException("Pipeline for " + unit + " stopped before all rows were written");
+        }
+        return rows;
+    }
+    
+    /**
+     * 停止流水线的各阶段。中止环形缓冲区后等待中的阶段立即返回；出错时读阶段可能阻塞在网络读取中，
+     * 先取消查询。等待所有阶段结束后调用方才能关闭查询语句和归还读连接
+     * 
+     * @param stages 未结束的阶段数
+     * @param stmt 需要取消的查询，所有行都已读取和写入时为null
+     */
+    private static void stopPipeline(RowRing ring, CountDownLatch stages, PreparedStatement stmt) {
+        ring.abort();
+        if (stmt != null) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                logger.debug("Cannot cancel pipeline query: {}", e.getMessage());
+            }
+        }
+        try {
+            if (!stages.await(1, TimeUnit.MINUTES)) {
+                logger.warn("Pipeline stages did not stop within a minute");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 出错后回滚写连接。连接已经断开（或已被连接池关闭）时回滚本身也会失败，这个错误附加到原始错误上，
+     * 不覆盖原始错误，重试判断依据的是原始错误
+     * 
+     * @param conn 写连接
+     * @param failure 原始错误
+     */
+    private static void rollbackAfter(Connection conn, SQLException failure) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackError) {
+            failure.addSuppressed(rollbackError);
+        }
+    }
+    
+    /**
+     * 按 &lt;table&gt;.writeMode 创建写入方式：update 按 &lt;table&gt;.batchSize 和 &lt;table&gt;.commitInterval
+     * 逐行批量更新，staging 装载到暂存表后关联更新；
+     * 每次提交后把最后一行的地址记录为检查点水位。地址在更新后会改变时整个工作单元只在最后提交一次，不记录水位
+     * 
+     * @param conn 写连接
+     * @param unit 工作单元
+     * @param tableMetrics 记录写入和提交耗时
+     * @return 写入方式
+     */
+    private RowWriter createRowWriter(Connection conn, WorkUnit unit, TableMetrics tableMetrics) throws SQLException {
+        String tableName = unit.getTableName();
+        int rangeIndex = unit.getRangeIndex();
+        boolean stable = unit.getPlan().getRowAddress().isStable();
+        Consumer<Object> commitListener = stable
+                ? address -> checkpoint.updateWatermark(tableName, rangeIndex, address)
+                : address -> { };
+        if (configLoader.getWriteMode(tableName) == WriteMode.STAGING) {
+            return new StagingTableWriter(conn, dialect, unit.getPlan(), getStagingTableName(tableName),
+                    configLoader.getStagingRows(), commitListener, tableMetrics);
+        }
+        int commitInterval = stable ? configLoader.getCommitInterval(tableName) : Integer.MAX_VALUE;
+        BatchSizeController batchSizeController = new BatchSizeController(configLoader.getBatchSize(tableName),
+                commitInterval, configLoader.isAdaptiveBatching(tableName),
+                configLoader.getTargetBatchMillis(), configLoader.getMinBatchSize(), configLoader.getMaxBatchSize());
+        return new BatchUpdateWriter(conn, unit.getPlan(), batchSizeController, commitListener, tableMetrics);
+    }
+    
+    /**
+     * 生成表的暂存表名，只包含字母、数字和下划线，且不超过Oracle的30字符限制
+     * 
+     * 暂存表中的行只对写入它的会话可见，表的所有工作单元使用同一个名字；表名的散列值作为后缀，
+     * 截断后前缀相同的两个表不会共用暂存表。
+     */
+    private static String getStagingTableName(String tableName) {
+        String suffix = "_" + Integer.toHexString(tableName.toLowerCase(Locale.ROOT).hashCode());
+        String base = "anon_stg_" + tableName.replaceAll("[^A-Za-z0-9_]", "_");
+        return base.substring(0, Math.min(base.length(), 30 - suffix.length())) + suffix;
+    }
+    
+    /**
+     * 确定表中定位一行的方式
+     * 
+     * 配置了 &lt;table&gt;.rowAddress=physical 且数据库提供物理行地址时按物理地址定位，否则按完整的主键定位；
+     * 没有主键的表在数据库提供物理地址时也按物理地址定位。
+     * 
+     * @param conn 数据库连接
+     * @param tableName 表名
+     * @return 行地址
+     */
+    private RowAddress getRowAddress(Connection conn, String tableName) throws SQLException {
+        RowAddress physical = dialect.getPhysicalRowAddress();
+        if (configLoader.isPhysicalRowAddress(tableName)) {
+            if (physical != null) {
+                logger.info("Addressing rows of table {} by {}", tableName, physical);
+                return physical;
+            }
+            logger.warn("Database has no physical row address, addressing table {} by primary key", tableName);
+        }
+        List<String> keyColumns = getPrimaryKeyColumns(conn, tableName);
+        if (!keyColumns.isEmpty()) {
+            return RowAddress.primaryKey(keyColumns);
+        }
+        if (physical != null) {
+            logger.info("Table {} has no primary key, addressing rows by {}", tableName, physical);
+            return physical;
         }
         throw new SQLException("No primary key found for table: " + tableName);
     }
     
     /**
-     * 获取指定表列的脱敏规则
+     * 获取表的主键列名，表在启动时读取的目录中时不查询数据库
      * 
+     * @param conn 数据库连接
      * @param tableName 表名
-     * @param columnName 列名
-     * @return 脱敏规则
+     * @return 按主键中的顺序排列的主键列，没有主键时返回空列表
      */
-    private AnonymizationRule getAnonymizationRule(String tableName, String columnName) {
-        String columnType = configLoader.getColumnTypes(tableName).get(columnName);
-        return AnonymizationRules.getRule(columnType);
+    private List<String> getPrimaryKeyColumns(Connection conn, String tableName) throws SQLException {
+        if (schema.contains(tableName)) {
+            return schema.getPrimaryKey(tableName);
+        }
+        List<String> keyColumns = new ArrayList<>();
+        String primaryKeyQuery = dialect.getPrimaryKeyQuery(tableName);
+        if (primaryKeyQuery != null) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(primaryKeyQuery)) {
+                while (rs.next()) {
+                    keyColumns.add(rs.getString(1));
+                }
+            }
+        } else {
+            // 使用JDBC元数据API获取主键，结果按列名排序，需要按 KEY_SEQ 恢复列在主键中的顺序。
+            // 限定为连接当前的库和 schema，否则其他库中同名表的主键列会混进来
+            DatabaseMetaData metaData = conn.getMetaData();
+            Map<Integer, String> columnsBySequence = new TreeMap<>();
+            try (ResultSet rs = metaData.getPrimaryKeys(conn.getCatalog(), conn.getSchema(), tableName)) {
+                while (rs.next()) {
+                    columnsBySequence.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+            }
+            keyColumns.addAll(columnsBySequence.values());
+        }
+        return keyColumns;
     }
     
     /**
@@ -0,0 +1,84 @@
+package com.anonymizer.app.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * 行地址（主键）范围，下界不包含、上界包含，为null时表示该方向不设边界
+ *
+ * 复合主键的边界是 Object[]，可以只包含前几列（见 {@link RowAddress}）。
+ */
+public class KeyRange {
+    private final Object lower;
+    private final Object upper;
+
+    public KeyRange(Object lower, Object upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * 创建覆盖整个表的范围
+     *
+     * @return 无边界的范围
+     */
+    public static KeyRange unbounded() {
+        return new KeyRange(null, null);
+    }
+
+    public Object getLower() {
+        return lower;
+    }
+
+    public Object getUpper() {
+        return upper;
+    }
+
+    /**
+     * 生成限定该范围的查询条件
+     *
+     * @param address 表的行地址
+     * @return SQL条件，如果范围无边界则返回null
+     */
+    public String getCondition(RowAddress address) {
+        if (lower != null && upper != null) {
+            return address.getBoundCondition(lower, true) + " AND " + address.getBoundCondition(upper, false);
+        } else if (lower != null) {
+            return address.getBoundCondition(lower, true);
+        } else if (upper != null) {
+            return address.getBoundCondition(upper, false);
+        }
+        return null;
+    }
+
+    /**
+     * 绑定 {@link #getCondition(RowAddress)} 中的参数
+     *
+     * @param stmt 预编译语句
+     * @param paramIndex 第一个参数的位置
+     * @param address 表的行地址
+     * @return 下一个参数的位置
+     */
+    public int bind(PreparedStatement stmt, int paramIndex, RowAddress address) throws SQLException {
+        if (lower != null) {
+            paramIndex = address.bindBound(stmt, paramIndex, lower);
+        }
+        if (upper != null) {
+            paramIndex = address.bindBound(stmt, paramIndex, upper);
+        }
+        return paramIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + format(lower, "-inf") + ", " + format(upper, "+inf") + "]";
+    }
+
+    private static String format(Object bound, String unbounded) {
+        if (bound == null) {
+            return unbounded;
+        }
+        return bound instanceof Object[] ? Arrays.toString((Object[]) bound) : String.valueOf(bound);
+    }
+}
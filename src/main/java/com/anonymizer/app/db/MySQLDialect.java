@@ -1,9 +1,26 @@
 package com.anonymizer.app.db;
 
+import com.anonymizer.app.anonymizer.AnonymizationRules;
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.jdbc.JdbcConnection;
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
 /**
  * MySQL数据库方言实现
  */
 public class MySQLDialect implements DatabaseDialect {
+    /** 下推的列声明的最大长度上限 */
+    private static final int MAX_PUSHDOWN_LENGTH = 64;
     
     @Override
     public String getTableStructureQuery(String tableName) {
@@ -16,7 +33,49 @@ public class MySQLDialect implements DatabaseDialect {
     }
     
     @Override
-    public String getUpdateQuery(String tableName, String[] columns, String primaryKeyColumn) {
+    public String getSelectQuery(String tableName, String[] columns, RowAddress rowAddress, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT ").append(rowAddress.getSelectList());
+        for (String column : columns) {
+            query.append(", ").append(column);
+        }
+        query.append(" FROM ").append(tableName);
+        
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        if (rowAddress.getOrderBy() != null) {
+            query.append(" ORDER BY ").append(rowAddress.getOrderBy());
+        }
+        return query.toString();
+    }
+    
+    @Override
+    public PreparedStatement prepareStreamingQuery(Connection connection, String sql, int fetchSize) throws SQLException {
+        PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (connection.getMetaData().getURL().contains("useCursorFetch=true")) {
+            // 服务端游标，每次获取fetchSize行
+            stmt.setFetchSize(fetchSize);
+        } else {
+            // Connector/J 只有在 fetchSize 为 Integer.MIN_VALUE 时才逐行流式读取，否则会缓存整个结果集
+            stmt.setFetchSize(Integer.MIN_VALUE);
+        }
+        return stmt;
+    }
+    
+    @Override
+    public String getKeyRangeQuery(String tableName, String primaryKeyColumn) {
+        return "SELECT MIN(" + primaryKeyColumn + "), MAX(" + primaryKeyColumn + ") FROM " + tableName;
+    }
+    
+    @Override
+    public String getKeyHistogramQuery(String tableName, String primaryKeyColumn) {
+        // MySQL不允许在索引列上建立直方图，只能按最小值和最大值均匀切分
+        return null;
+    }
+    
+    @Override
+    public String getUpdateQuery(String tableName, String[] columns, RowAddress rowAddress) {
         StringBuilder query = new StringBuilder();
         query.append("UPDATE ").append(tableName).append(" SET ");
         
@@ -27,14 +86,260 @@ public class MySQLDialect implements DatabaseDialect {
             query.append(columns[i]).append(" = ?");
         }
         
-        query.append(" WHERE ").append(primaryKeyColumn).append(" = ?");
+        query.append(" WHERE ").append(rowAddress.getMatchCondition());
+        return query.toString();
+    }
+    
+    @Override
+    public String getInsertQuery(String tableName, String[] columns) {
+        return buildInsertQuery(null, tableName, columns);
+    }
+    
+    @Override
+    public String getTruncateQuery(String tableName) {
+        return "TRUNCATE TABLE " + tableName;
+    }
+    
+    @Override
+    public String getAnonymizationExpression(String ruleType, String column, int maxLength) {
+        if (maxLength <= 0 || maxLength > MAX_PUSHDOWN_LENGTH) {
+            // 按位置展开的表达式长度与列长度成正比，长列和不限长度的列在JDBC中处理
+            return null;
+        }
+        switch (ruleType) {
+            case AnonymizationRules.MOBILE:
+            case AnonymizationRules.PHONE:
+                return replaceChars(column, maxLength, true, false);
+            case AnonymizationRules.BANK_CARD:
+            case AnonymizationRules.ID_CARD:
+                return replaceChars(column, maxLength, true, true);
+            case AnonymizationRules.EMAIL:
+                return replaceChars(column, maxLength, false, true);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * 生成逐字符替换的表达式：按位置取出第1到 maxLength 个字符，每个ASCII数字或字母替换为同类的随机字符后再拼接。
+     * 每个位置各自调用RAND()，值中相同的字符互相独立；超出值长度的位置为空字符串，空值保持为空。
+     */
+    private static String replaceChars(String column, int maxLength, boolean digits, boolean letters) {
+        StringBuilder expression = new StringBuilder("CONCAT(");
+        for (int pos = 1; pos <= maxLength; pos++) {
+            String ch = "SUBSTRING(" + column + ", " + pos + ", 1)";
+            if (pos > 1) {
+                expression.append(", ");
+            }
+            expression.append("CASE");
+            if (digits) {
+                expression.append(" WHEN ASCII(").append(ch).append(") BETWEEN 48 AND 57 THEN CHAR(48 + FLOOR(RAND() * 10) USING ascii)");
+            }
+            if (letters) {
+                expression.append(" WHEN ASCII(").append(ch).append(") BETWEEN 97 AND 122 THEN CHAR(97 + FLOOR(RAND() * 26) USING ascii)");
+                expression.append(" WHEN ASCII(").append(ch).append(") BETWEEN 65 AND 90 THEN CHAR(65 + FLOOR(RAND() * 26) USING ascii)");
+            }
+            expression.append(" ELSE ").append(ch).append(" END");
+        }
+        return expression.append(")").toString();
+    }
+    
+    @Override
+    public String getExpressionUpdateQuery(String tableName, String[] columns, String[] expressions, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" SET ");
+        
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns[i]).append(" = ").append(expressions[i]);
+        }
+        
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
         return query.toString();
     }
     
+    @Override
+    public void prepareStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                    RowAddress rowAddress) {
+        // 临时表只存在于创建它的会话中，由每个工作单元自己创建
+    }
+    
+    @Override
+    public void createStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                   RowAddress rowAddress) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TEMPORARY TABLE " + stagingTable + " (PRIMARY KEY (" +
+                    String.join(", ", rowAddress.getStagingColumns()) + ")) " +
+                    "SELECT " + joinColumns(rowAddress.getStagingSelectList(), columns) + " FROM " + tableName + " WHERE 1 = 0");
+        }
+    }
+    
+    @Override
+    public void loadStagingTable(Connection connection, String stagingTable, String[] columns, List<Object[]> rows)
+            throws SQLException {
+        if (!connection.getMetaData().getURL().contains("allowLoadLocalInfile=true")) {
+            // 未开启LOCAL INFILE时退回到批量插入（配合 rewriteBatchedStatements 改写为多行INSERT）
+            insertRows(connection, buildInsertQuery(null, stagingTable, columns), rows);
+            return;
+        }
+        
+        // LOAD DATA默认格式：制表符分隔，换行结束，反斜杠转义，\N表示NULL
+        StringBuilder data = new StringBuilder(rows.size() * 32);
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    data.append('\t');
+                }
+                appendEscaped(data, row[i]);
+            }
+            data.append('\n');
+        }
+        
+        String sql = "LOAD DATA LOCAL INFILE 'staging' INTO TABLE " + stagingTable + " CHARACTER SET utf8mb4 (" +
+                String.join(", ", columns) + ")";
+        try (Statement stmt = connection.createStatement()) {
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(
+                    new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8)));
+            stmt.executeUpdate(sql);
+        }
+    }
+    
+    private static void appendEscaped(StringBuilder data, Object value) {
+        if (value == null) {
+            data.append("\\N");
+            return;
+        }
+        String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    data.append("\\\\");
+                    break;
+                case '\t':
+                    data.append("\\t");
+                    break;
+                case '\n':
+                    data.append("\\n");
+                    break;
+                case '\r':
+                    data.append("\\r");
+                    break;
+                default:
+                    data.append(c);
+            }
+        }
+    }
+    
+    @Override
+    public String getStagingUpdateQuery(String tableName, String stagingTable, String[] columns, RowAddress rowAddress) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" target JOIN ").append(stagingTable).append(" staging ON ")
+             .append(rowAddress.getJoinCondition("target", "staging")).append(" SET ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append("target.").append(columns[i]).append(" = staging.").append(columns[i]);
+        }
+        return query.toString();
+    }
+    
+    @Override
+    public void dropStagingTable(Connection connection, String stagingTable) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TEMPORARY TABLE IF EXISTS " + stagingTable);
+        }
+    }
+    
     @Override
     public String getPrimaryKeyQuery(String tableName) {
         // MySQL通常使用DatabaseMetaData.getPrimaryKeys方法获取主键信息
         // 这里返回null，表示使用JDBC元数据API
         return null;
     }
-} 
\ No newline at end of file
+    
+    @Override
+    public String getCatalogQuery(List<String> tableNames) {
+        return "SELECT c.TABLE_NAME, c.COLUMN_NAME, c.ORDINAL_POSITION, k.ORDINAL_POSITION " +
+               "FROM information_schema.COLUMNS c " +
+               "LEFT JOIN information_schema.KEY_COLUMN_USAGE k ON k.TABLE_SCHEMA = c.TABLE_SCHEMA " +
+               "AND k.TABLE_NAME = c.TABLE_NAME AND k.COLUMN_NAME = c.COLUMN_NAME AND k.CONSTRAINT_NAME = 'PRIMARY' " +
+               "WHERE c.TABLE_SCHEMA = DATABASE() AND c.TABLE_NAME IN (" + SchemaCatalog.toSqlList(tableNames) + ")";
+    }
+    
+    @Override
+    public String getCatalogVersionQuery(List<String> tableNames) {
+        // 即时（INSTANT）DDL不改变 CREATE_TIME，改用列定义的校验和；GROUP_CONCAT 有长度限制，不能用来拼接
+        return "SELECT CONCAT(COUNT(*), ':', COALESCE(SUM(CRC32(CONCAT_WS('|', TABLE_NAME, COLUMN_NAME, " +
+               "ORDINAL_POSITION, COLUMN_KEY))), 0)) FROM information_schema.COLUMNS " +
+               "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME IN (" + SchemaCatalog.toSqlList(tableNames) + ")";
+    }
+    
+    @Override
+    public RowAddress getPhysicalRowAddress() {
+        // InnoDB按聚簇索引定位行，没有客户端可用的物理地址；没有主键的表的隐藏行ID也不能在SQL中引用
+        return null;
+    }
+    
+    @Override
+    public Properties getStatementCacheProperties(int cacheSize) {
+        // 客户端缓存 PreparedStatement 的解析结果，不使用服务端预编译（与批处理改写配合更好）
+        Properties properties = new Properties();
+        properties.setProperty("cachePrepStmts", "true");
+        properties.setProperty("prepStmtCacheSize", String.valueOf(cacheSize));
+        properties.setProperty("prepStmtCacheSqlLimit", "2048");
+        return properties;
+    }
+    
+    @Override
+    public String getBatchRewriteProperty() {
+        // 把 INSERT 批处理改写为多值 INSERT，把 UPDATE 批处理合并为一次发送的多语句请求
+        return "rewriteBatchedStatements";
+    }
+    
+    @Override
+    public boolean isBatchRewriteEnabled(Connection connection) throws SQLException {
+        return connection.unwrap(JdbcConnection.class).getPropertySet()
+                .getBooleanProperty(PropertyKey.rewriteBatchedStatements).getValue();
+    }
+    
+    private static String joinColumns(String addressList, String[] columns) {
+        StringBuilder list = new StringBuilder(addressList);
+        for (String column : columns) {
+            list.append(", ").append(column);
+        }
+        return list.toString();
+    }
+    
+    /**
+     * 以数组绑定的批处理插入行
+     */
+    private static void insertRows(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    pstmt.setObject(i + 1, row[i]);
+                }
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+    
+    private static String buildInsertQuery(String hint, String tableName, String[] columns) {
+        StringBuilder query = new StringBuilder("INSERT ");
+        if (hint != null) {
+            query.append(hint).append(' ');
+        }
+        query.append("INTO ").append(tableName).append(" (").append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i > 0 ? ", ?" : "?");
+        }
+        return query.append(")").toString();
+    }
+}
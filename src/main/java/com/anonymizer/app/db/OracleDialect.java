@@ -1,5 +1,17 @@
 package com.anonymizer.app.db;
 
+import com.anonymizer.app.anonymizer.AnonymizationRules;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
 /**
  * Oracle数据库方言实现
  */
@@ -16,7 +28,48 @@ public class OracleDialect implements DatabaseDialect {
     }
     
     @Override
-    public String getUpdateQuery(String tableName, String[] columns, String primaryKeyColumn) {
+    public String getSelectQuery(String tableName, String[] columns, RowAddress rowAddress, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT ").append(rowAddress.getSelectList());
+        for (String column : columns) {
+            query.append(", ").append(column);
+        }
+        query.append(" FROM ").append(tableName);
+        
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        if (rowAddress.getOrderBy() != null) {
+            query.append(" ORDER BY ").append(rowAddress.getOrderBy());
+        }
+        return query.toString();
+    }
+    
+    @Override
+    public PreparedStatement prepareStreamingQuery(Connection connection, String sql, int fetchSize) throws SQLException {
+        // Oracle驱动默认每次只获取10行，调大以减少网络往返
+        PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+    
+    @Override
+    public String getKeyRangeQuery(String tableName, String primaryKeyColumn) {
+        return "SELECT MIN(" + primaryKeyColumn + "), MAX(" + primaryKeyColumn + ") FROM " + tableName;
+    }
+    
+    @Override
+    public String getKeyHistogramQuery(String tableName, String primaryKeyColumn) {
+        // 与目录查询一样只取当前 schema 中的表，其他 schema 中的同名表也有直方图
+        return "SELECT endpoint_value FROM all_tab_histograms " +
+               "WHERE owner = SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA') " +
+               "AND table_name = '" + tableName.toUpperCase() + "' " +
+               "AND column_name = '" + primaryKeyColumn.toUpperCase() + "' " +
+               "ORDER BY endpoint_number";
+    }
+    
+    @Override
+    public String getUpdateQuery(String tableName, String[] columns, RowAddress rowAddress) {
         StringBuilder query = new StringBuilder();
         query.append("UPDATE ").append(tableName).append(" SET ");
         
@@ -27,16 +80,260 @@ public class OracleDialect implements DatabaseDialect {
             query.append(columns[i]).append(" = ?");
         }
         
-        query.append(" WHERE ").append(primaryKeyColumn).append(" = ?");
+        query.append(" WHERE ").append(rowAddress.getMatchCondition());
+        return query.toString();
+    }
+    
+    /** 下推的列声明的最大长度上限 */
+    private static final int MAX_PUSHDOWN_LENGTH = 64;
+    
+    @Override
+    public String getInsertQuery(String tableName, String[] columns) {
+        return buildInsertQuery(null, tableName, columns);
+    }
+    
+    @Override
+    public String getTruncateQuery(String tableName) {
+        return "TRUNCATE TABLE " + tableName;
+    }
+    
+    @Override
+    public String getAnonymizationExpression(String ruleType, String column, int maxLength) {
+        if (maxLength <= 0 || maxLength > MAX_PUSHDOWN_LENGTH) {
+            // 按位置展开的表达式长度与列长度成正比，长列和不限长度的列在JDBC中处理
+            return null;
+        }
+        switch (ruleType) {
+            case AnonymizationRules.MOBILE:
+            case AnonymizationRules.PHONE:
+                return replaceChars(column, maxLength, true, false);
+            case AnonymizationRules.BANK_CARD:
+            case AnonymizationRules.ID_CARD:
+                return replaceChars(column, maxLength, true, true);
+            case AnonymizationRules.EMAIL:
+                return replaceChars(column, maxLength, false, true);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * 生成逐字符替换的表达式：按位置取出第1到 maxLength 个字符，每个ASCII数字或字母替换为同类的随机字符后再拼接。
+     * 每个位置各自调用DBMS_RANDOM，值中相同的字符互相独立；超出值长度的位置为NULL，拼接时视为空字符串。
+     */
+    private static String replaceChars(String column, int maxLength, boolean digits, boolean letters) {
+        StringBuilder expression = new StringBuilder();
+        for (int pos = 1; pos <= maxLength; pos++) {
+            String ch = "SUBSTR(" + column + ", " + pos + ", 1)";
+            if (pos > 1) {
+                expression.append(" || ");
+            }
+            expression.append("CASE");
+            if (digits) {
+                expression.append(" WHEN ASCII(").append(ch).append(") BETWEEN 48 AND 57")
+                          .append(" THEN CHR(48 + TRUNC(DBMS_RANDOM.VALUE(0, 10)))");
+            }
+            if (letters) {
+                expression.append(" WHEN ASCII(").append(ch).append(") BETWEEN 97 AND 122")
+                          .append(" THEN CHR(97 + TRUNC(DBMS_RANDOM.VALUE(0, 26)))");
+                expression.append(" WHEN ASCII(").append(ch).append(") BETWEEN 65 AND 90")
+                          .append(" THEN CHR(65 + TRUNC(DBMS_RANDOM.VALUE(0, 26)))");
+            }
+            expression.append(" ELSE ").append(ch).append(" END");
+        }
+        return expression.toString();
+    }
+    
+    @Override
+    public String getExpressionUpdateQuery(String tableName, String[] columns, String[] expressions, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" SET ");
+        
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns[i]).append(" = ").append(expressions[i]);
+        }
+        
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        return query.toString();
+    }
+    
+    @Override
+    public void prepareStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                    RowAddress rowAddress) throws SQLException {
+        // 全局临时表是永久的模式对象，只在不存在或列与本次运行不一致时创建；各会话中的行互不可见，
+        // 表的所有工作单元共用一个暂存表，运行结束后保留供下次复用，进程中途退出也不会留下需要清理的对象
+        List<String> expected = new ArrayList<>();
+        for (String column : rowAddress.getStagingColumns()) {
+            expected.add(column.toUpperCase(Locale.ROOT));
+        }
+        for (String column : columns) {
+            expected.add(column.toUpperCase(Locale.ROOT));
+        }
+        List<String> existing = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT column_name FROM user_tab_columns WHERE table_name = ? ORDER BY column_id")) {
+            pstmt.setString(1, stagingTable.toUpperCase(Locale.ROOT));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+            }
+        }
+        if (existing.equals(expected)) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            if (!existing.isEmpty()) {
+                // 其他会话中仍有行时删除失败（ORA-14452），说明另一次运行正在使用该暂存表
+                stmt.executeUpdate("DROP TABLE " + stagingTable);
+            }
+            stmt.executeUpdate("CREATE GLOBAL TEMPORARY TABLE " + stagingTable + " ON COMMIT PRESERVE ROWS AS SELECT " +
+                    joinColumns(rowAddress.getStagingSelectList(), columns) + " FROM " + tableName + " WHERE 1 = 0");
+        }
+    }
+    
+    @Override
+    public void createStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                   RowAddress rowAddress) throws SQLException {
+        // 暂存表已在规划阶段创建，只清空本会话中可能残留的行
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE " + stagingTable);
+        }
+    }
+    
+    @Override
+    public void loadStagingTable(Connection connection, String stagingTable, String[] columns, List<Object[]> rows)
+            throws SQLException {
+        // APPEND_VALUES使数组绑定的批量插入走直接路径装载
+        insertRows(connection, buildInsertQuery("/*+ APPEND_VALUES */", stagingTable, columns), rows);
+    }
+    
+    @Override
+    public String getStagingUpdateQuery(String tableName, String stagingTable, String[] columns, RowAddress rowAddress) {
+        StringBuilder query = new StringBuilder();
+        query.append("MERGE INTO ").append(tableName).append(" target USING ").append(stagingTable).append(" staging ON (")
+             .append(rowAddress.getJoinCondition("target", "staging"))
+             .append(") WHEN MATCHED THEN UPDATE SET ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append("target.").append(columns[i]).append(" = staging.").append(columns[i]);
+        }
         return query.toString();
     }
     
+    @Override
+    public void dropStagingTable(Connection connection, String stagingTable) throws SQLException {
+        // 共用的全局临时表不删除；清空本会话中的行后会话不再绑定该表，之后可以修改或删除
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE " + stagingTable);
+        }
+    }
+    
     @Override
     public String getPrimaryKeyQuery(String tableName) {
         return "SELECT cols.column_name FROM all_constraints cons, all_cons_columns cols " +
-               "WHERE cols.table_name = '" + tableName.toUpperCase() + "' " +
+               "WHERE cons.owner = SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA') " +
+               "AND cols.table_name = '" + tableName.toUpperCase() + "' " +
                "AND cons.constraint_type = 'P' " +
                "AND cons.constraint_name = cols.constraint_name " +
-               "AND cons.owner = cols.owner";
+               "AND cons.owner = cols.owner " +
+               "ORDER BY cols.position";
+    }
+    
+    @Override
+    public String getCatalogQuery(List<String> tableNames) {
+        return "SELECT c.table_name, c.column_name, c.column_id, k.position FROM all_tab_columns c " +
+               "LEFT JOIN (SELECT cols.owner, cols.table_name, cols.column_name, cols.position " +
+               "FROM all_constraints cons JOIN all_cons_columns cols " +
+               "ON cols.owner = cons.owner AND cols.constraint_name = cons.constraint_name " +
+               "WHERE cons.constraint_type = 'P') k " +
+               "ON k.owner = c.owner AND k.table_name = c.table_name AND k.column_name = c.column_name " +
+               "WHERE c.owner = SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA') " +
+               "AND c.table_name IN (" + SchemaCatalog.toSqlList(upperCase(tableNames)) + ")";
+    }
+    
+    @Override
+    public String getCatalogVersionQuery(List<String> tableNames) {
+        return "SELECT COUNT(*) || ':' || TO_CHAR(MAX(last_ddl_time), 'YYYY-MM-DD HH24:MI:SS') FROM all_objects " +
+               "WHERE owner = SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA') AND object_type = 'TABLE' " +
+               "AND object_name IN (" + SchemaCatalog.toSqlList(upperCase(tableNames)) + ")";
+    }
+    
+    @Override
+    public RowAddress getPhysicalRowAddress() {
+        // ROWID以字符串形式读取和绑定；启用 ROW MOVEMENT 的表（分区键更新、SHRINK SPACE）中行的ROWID可能改变，不应按地址处理
+        return RowAddress.physical("ROWID", "ROWIDTOCHAR(ROWID)", "CHARTOROWID(%s)", null);
+    }
+    
+    @Override
+    public Properties getStatementCacheProperties(int cacheSize) {
+        // 隐式语句缓存：关闭的 PreparedStatement 保留游标，再次准备同样的SQL时直接复用
+        Properties properties = new Properties();
+        properties.setProperty("oracle.jdbc.implicitStatementCacheSize", String.valueOf(cacheSize));
+        return properties;
+    }
+    
+    @Override
+    public String getBatchRewriteProperty() {
+        // Oracle驱动原生使用数组绑定执行批处理，不需要改写
+        return null;
+    }
+    
+    @Override
+    public boolean isBatchRewriteEnabled(Connection connection) {
+        return true;
+    }
+    
+    /**
+     * 未加引号的标识符在Oracle中按大写保存
+     */
+    private static List<String> upperCase(List<String> tableNames) {
+        List<String> names = new ArrayList<>(tableNames.size());
+        for (String tableName : tableNames) {
+            names.add(tableName.toUpperCase(Locale.ROOT));
+        }
+        return names;
+    }
+    
+    private static String joinColumns(String addressList, String[] columns) {
+        StringBuilder list = new StringBuilder(addressList);
+        for (String column : columns) {
+            list.append(", ").append(column);
+        }
+        return list.toString();
+    }
+    
+    /**
+     * 以数组绑定的批处理插入行
+     */
+    private static void insertRows(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    pstmt.setObject(i + 1, row[i]);
+                }
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+    
+    private static String buildInsertQuery(String hint, String tableName, String[] columns) {
+        StringBuilder query = new StringBuilder("INSERT ");
+        if (hint != null) {
+            query.append(hint).append(' ');
+        }
+        query.append("INTO ").append(tableName).append(" (").append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i > 0 ? ", ?" : "?");
+        }
+        return query.append(")").toString();
     }
-} 
\ No newline at end of file
+}
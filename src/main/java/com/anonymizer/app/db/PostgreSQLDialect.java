@@ -1,5 +1,21 @@
 package com.anonymizer.app.db;
 
+import com.anonymizer.app.anonymizer.AnonymizationRules;
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
 /**
  * PostgreSQL数据库方言实现
  */
@@ -16,7 +32,50 @@ public class PostgreSQLDialect implements DatabaseDialect {
     }
     
     @Override
-    public String getUpdateQuery(String tableName, String[] columns, String primaryKeyColumn) {
+    public String getSelectQuery(String tableName, String[] columns, RowAddress rowAddress, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT ").append(rowAddress.getSelectList());
+        for (String column : columns) {
+            query.append(", ").append(column);
+        }
+        query.append(" FROM ").append(tableName);
+        
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
+        if (rowAddress.getOrderBy() != null) {
+            query.append(" ORDER BY ").append(rowAddress.getOrderBy());
+        }
+        return query.toString();
+    }
+    
+    @Override
+    public PreparedStatement prepareStreamingQuery(Connection connection, String sql, int fetchSize) throws SQLException {
+        // PostgreSQL驱动只有在非自动提交模式下才会使用游标分批获取，否则会缓存整个结果集
+        connection.setAutoCommit(false);
+        PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+    
+    @Override
+    public String getKeyRangeQuery(String tableName, String primaryKeyColumn) {
+        return "SELECT MIN(" + primaryKeyColumn + "), MAX(" + primaryKeyColumn + ") FROM " + tableName;
+    }
+    
+    @Override
+    public String getKeyHistogramQuery(String tableName, String primaryKeyColumn) {
+        // pg_stats.histogram_bounds 是ANALYZE采样得到的等频分布边界；
+        // 其他 schema 中的同名表也有统计信息，与目录查询一样只取按 search_path 可见的表
+        return "SELECT unnest(s.histogram_bounds::text::numeric[]) FROM pg_stats s " +
+               "JOIN pg_namespace n ON n.nspname = s.schemaname " +
+               "JOIN pg_class c ON c.relnamespace = n.oid AND c.relname = s.tablename " +
+               "WHERE s.tablename = '" + tableName + "' AND s.attname = '" + primaryKeyColumn + "' " +
+               "AND pg_table_is_visible(c.oid)";
+    }
+    
+    @Override
+    public String getUpdateQuery(String tableName, String[] columns, RowAddress rowAddress) {
         StringBuilder query = new StringBuilder();
         query.append("UPDATE ").append(tableName).append(" SET ");
         
@@ -27,14 +86,209 @@ public class PostgreSQLDialect implements DatabaseDialect {
             query.append(columns[i]).append(" = ?");
         }
         
-        query.append(" WHERE ").append(primaryKeyColumn).append(" = ?");
+        query.append(" WHERE ").append(rowAddress.getMatchCondition());
+        return query.toString();
+    }
+    
+    @Override
+    public String getInsertQuery(String tableName, String[] columns) {
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO ").append(tableName).append(" (").append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i > 0 ? ", ?" : "?");
+        }
+        return query.append(")").toString();
+    }
+    
+    @Override
+    public String getTruncateQuery(String tableName) {
+        return "TRUNCATE TABLE " + tableName;
+    }
+    
+    @Override
+    public String getAnonymizationExpression(String ruleType, String column, int maxLength) {
+        switch (ruleType) {
+            case AnonymizationRules.MOBILE:
+            case AnonymizationRules.PHONE:
+                return replaceChars(column, true, false);
+            case AnonymizationRules.BANK_CARD:
+            case AnonymizationRules.ID_CARD:
+                return replaceChars(column, true, true);
+            case AnonymizationRules.EMAIL:
+                return replaceChars(column, false, true);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * 生成逐字符替换的表达式：把值拆成字符，每个ASCII数字或字母替换为同类的随机字符后再拼接。
+     * 子查询引用了当前行的列，因此对每一行分别求值；COALESCE保留空字符串。
+     */
+    private static String replaceChars(String column, boolean digits, boolean letters) {
+        StringBuilder expression = new StringBuilder("COALESCE((SELECT string_agg(CASE");
+        if (digits) {
+            expression.append(" WHEN ascii(ch) BETWEEN 48 AND 57 THEN chr(48 + floor(random() * 10)::int)");
+        }
+        if (letters) {
+            expression.append(" WHEN ascii(ch) BETWEEN 97 AND 122 THEN chr(97 + floor(random() * 26)::int)");
+            expression.append(" WHEN ascii(ch) BETWEEN 65 AND 90 THEN chr(65 + floor(random() * 26)::int)");
+        }
+        expression.append(" ELSE ch END, '' ORDER BY pos) FROM regexp_split_to_table(")
+                  .append(column).append(", '') WITH ORDINALITY AS chars(ch, pos)), ")
+                  .append(column).append(")");
+        return expression.toString();
+    }
+    
+    @Override
+    public String getExpressionUpdateQuery(String tableName, String[] columns, String[] expressions, String condition) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" SET ");
+        
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns[i]).append(" = ").append(expressions[i]);
+        }
+        
+        if (condition != null) {
+            query.append(" WHERE ").append(condition);
+        }
         return query.toString();
     }
     
+    @Override
+    public void prepareStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                    RowAddress rowAddress) {
+        // 临时表只存在于创建它的会话中，由每个工作单元自己创建
+    }
+    
+    @Override
+    public void createStagingTable(Connection connection, String stagingTable, String tableName, String[] columns,
+                                   RowAddress rowAddress) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TEMPORARY TABLE " + stagingTable + " AS SELECT " +
+                    joinColumns(rowAddress.getStagingSelectList(), columns) + " FROM " + tableName + " WITH NO DATA");
+        }
+    }
+    
+    @Override
+    public void loadStagingTable(Connection connection, String stagingTable, String[] columns, List<Object[]> rows)
+            throws SQLException {
+        // COPY的CSV格式：非NULL值一律加引号，未加引号的空值表示NULL
+        StringBuilder data = new StringBuilder(rows.size() * 32);
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    data.append(',');
+                }
+                if (row[i] != null) {
+                    data.append('"').append(row[i].toString().replace("\"", "\"\"")).append('"');
+                }
+            }
+            data.append('\n');
+        }
+        
+        String sql = "COPY " + stagingTable + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        try {
+            connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, new StringReader(data.toString()));
+        } catch (IOException e) {
+            throw new SQLException("Error copying rows into " + stagingTable, e);
+        }
+    }
+    
+    @Override
+    public String getStagingUpdateQuery(String tableName, String stagingTable, String[] columns, RowAddress rowAddress) {
+        StringBuilder query = new StringBuilder();
+        query.append("UPDATE ").append(tableName).append(" AS target SET ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns[i]).append(" = staging.").append(columns[i]);
+        }
+        query.append(" FROM ").append(stagingTable).append(" AS staging WHERE ")
+             .append(rowAddress.getJoinCondition("target", "staging"));
+        return query.toString();
+    }
+    
+    @Override
+    public void dropStagingTable(Connection connection, String stagingTable) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + stagingTable);
+        }
+    }
+    
     @Override
     public String getPrimaryKeyQuery(String tableName) {
         return "SELECT a.attname FROM pg_index i " +
                "JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = ANY(i.indkey) " +
-               "WHERE i.indrelid = '" + tableName + "'::regclass AND i.indisprimary";
+               "WHERE i.indrelid = '" + tableName + "'::regclass AND i.indisprimary " +
+               "ORDER BY array_position(i.indkey::int2[], a.attnum)";
+    }
+    
+    @Override
+    public String getCatalogQuery(List<String> tableNames) {
+        return "SELECT c.relname, a.attname, a.attnum, array_position(i.indkey::int2[], a.attnum) FROM pg_class c " +
+               "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped " +
+               "LEFT JOIN pg_index i ON i.indrelid = c.oid AND i.indisprimary " +
+               "WHERE c.relkind IN ('r', 'p') AND pg_table_is_visible(c.oid) " +
+               "AND c.relname IN (" + SchemaCatalog.toSqlList(lowerCase(tableNames)) + ")";
+    }
+    
+    @Override
+    public String getCatalogVersionQuery(List<String> tableNames) {
+        // ALTER TABLE 会重写表在 pg_class、pg_attribute 或 pg_index 中的目录行，行的 xmin 随之改变
+        return "SELECT string_agg(c.oid || ':' || c.xmin || ':' || " +
+               "(SELECT max(a.xmin::text::bigint) FROM pg_attribute a WHERE a.attrelid = c.oid) || ':' || " +
+               "COALESCE((SELECT max(i.xmin::text::bigint) FROM pg_index i WHERE i.indrelid = c.oid), 0), " +
+               "',' ORDER BY c.oid) FROM pg_class c " +
+               "WHERE c.relkind IN ('r', 'p') AND pg_table_is_visible(c.oid) " +
+               "AND c.relname IN (" + SchemaCatalog.toSqlList(lowerCase(tableNames)) + ")";
+    }
+    
+    @Override
+    public RowAddress getPhysicalRowAddress() {
+        // 更新会写入新的行版本，ctid随之改变。SHARE ROW EXCLUSIVE 阻止其他会话修改表，但不阻止读连接的查询
+        return RowAddress.physical("ctid", "ctid::text", "%s::tid", "LOCK TABLE %s IN SHARE ROW EXCLUSIVE MODE");
+    }
+    
+    @Override
+    public Properties getStatementCacheProperties(int cacheSize) {
+        // 驱动按SQL文本缓存服务端预编译语句，执行 prepareThreshold 次后改用命名语句
+        Properties properties = new Properties();
+        properties.setProperty("preparedStatementCacheQueries", String.valueOf(cacheSize));
+        return properties;
+    }
+    
+    @Override
+    public String getBatchRewriteProperty() {
+        // 把 INSERT 批处理改写为多值 INSERT（复制模式和暂存表装载）；UPDATE 批处理本身已经流水线发送
+        return "reWriteBatchedInserts";
+    }
+    
+    @Override
+    public boolean isBatchRewriteEnabled(Connection connection) throws SQLException {
+        return connection.unwrap(BaseConnection.class).getQueryExecutor().isReWriteBatchedInsertsEnabled();
+    }
+    
+    /**
+     * 未加引号的标识符在PostgreSQL中按小写保存
+     */
+    private static List<String> lowerCase(List<String> tableNames) {
+        List<String> names = new ArrayList<>(tableNames.size());
+        for (String tableName : tableNames) {
+            names.add(tableName.toLowerCase(Locale.ROOT));
+        }
+        return names;
+    }
+    
+    private static String joinColumns(String addressList, String[] columns) {
+        StringBuilder list = new StringBuilder(addressList);
+        for (String column : columns) {
+            list.append(", ").append(column);
+        }
+        return list.toString();
     }
-} 
\ No newline at end of file
+}
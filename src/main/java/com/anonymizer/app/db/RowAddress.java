@@ -0,0 +1,255 @@
+package com.anonymizer.app.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 定位表中一行的方式：完整的主键（可以是复合主键），或数据库提供的物理行地址（Oracle 的 ROWID、PostgreSQL 的 ctid）
+ *
+ * 查询结果集的前 {@link #getWidth()} 列是行地址，更新语句按地址定位行。
+ * 单列地址的值就是该列的值，复合主键的值是按主键列顺序排列的 Object[]。
+ *
+ * 复合主键的范围条件展开为 (k1 &gt; ?) OR (k1 = ? AND k2 &gt; ?) ...，不使用Oracle不支持的行值比较
+ * (k1, k2) &gt; (?, ?)；范围的边界可以只包含前几列（切分时只按第一列切分）。
+ *
+ * 物理地址直接定位到数据块，更新时不经过主键索引，适合主键很宽的大表，也是没有主键的表唯一的定位方式。
+ * 物理地址的表不切分范围。地址在行被更新后会改变时（PostgreSQL 的 ctid，见 {@link #isStable()}），
+ * 工作单元先锁表，再在一个事务中完成读取和全部更新，避免其他会话的更新使读到的地址失效；
+ * 这种地址不能作为续跑的水位，查询结果也不排序。
+ */
+public final class RowAddress {
+    /** 物理地址在暂存表中的列名 */
+    static final String STAGING_COLUMN = "anon_row_address";
+
+    private final String[] columns;
+    private final String[] selectExpressions;
+    private final String valueFormat;
+    private final boolean physical;
+    private final String lockFormat;
+
+    private RowAddress(String[] columns, String[] selectExpressions, String valueFormat, boolean physical,
+                       String lockFormat) {
+        this.columns = columns;
+        this.selectExpressions = selectExpressions;
+        this.valueFormat = valueFormat;
+        this.physical = physical;
+        this.lockFormat = lockFormat;
+    }
+
+    /**
+     * 按主键定位行
+     *
+     * @param keyColumns 按主键中的顺序排列的主键列
+     * @return 行地址
+     */
+    public static RowAddress primaryKey(List<String> keyColumns) {
+        if (keyColumns.isEmpty()) {
+            throw new IllegalArgumentException("Primary key needs at least one column");
+        }
+        String[] columns = keyColumns.toArray(new String[0]);
+        return new RowAddress(columns, columns, "%s", false, null);
+    }
+
+    /**
+     * 按物理行地址定位行
+     *
+     * @param column 地址伪列，如 ROWID
+     * @param selectExpression 读取地址时使用的表达式，把地址转换为可以用 getObject 读取、用 setObject 绑定的值
+     * @param valueFormat 把绑定的值（%s 为参数占位符或暂存表列）转换回地址的表达式
+     * @param lockFormat 地址在行被更新后会改变时，工作单元开始前执行的锁表语句（%s 为表名）；地址不变时为null
+     * @return 行地址
+     */
+    public static RowAddress physical(String column, String selectExpression, String valueFormat, String lockFormat) {
+        return new RowAddress(new String[] {column}, new String[] {selectExpression}, valueFormat, true, lockFormat);
+    }
+
+    public boolean isPhysical() {
+        return physical;
+    }
+
+    /**
+     * @return 行被更新后地址是否保持不变。不变时可以分批提交并以已提交的最后一个地址作为续跑的水位
+     */
+    public boolean isStable() {
+        return lockFormat == null;
+    }
+
+    /**
+     * @param tableName 表名
+     * @return 工作单元开始前执行的锁表语句，地址不变时返回null
+     */
+    public String getLockQuery(String tableName) {
+        return lockFormat == null ? null : String.format(lockFormat, tableName);
+    }
+
+    /**
+     * @return 地址在查询结果集中占的列数
+     */
+    public int getWidth() {
+        return columns.length;
+    }
+
+    /**
+     * @return 切分范围时使用的列，物理地址不切分时返回null
+     */
+    public String getSplitColumn() {
+        return physical ? null : columns[0];
+    }
+
+    /**
+     * @return 查询语句中读取地址的列表
+     */
+    public String getSelectList() {
+        return String.join(", ", selectExpressions);
+    }
+
+    /**
+     * @return 按地址排序的列表，地址不能作为水位时不需要排序，返回null
+     */
+    public String getOrderBy() {
+        return isStable() ? String.join(", ", columns) : null;
+    }
+
+    /**
+     * @return 按地址定位一行的条件，参数用 {@link #bind} 绑定
+     */
+    public String getMatchCondition() {
+        StringBuilder condition = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                condition.append(" AND ");
+            }
+            condition.append(columns[i]).append(" = ").append(String.format(valueFormat, "?"));
+        }
+        return condition.toString();
+    }
+
+    /**
+     * @return 暂存表中保存地址的列
+     */
+    public String[] getStagingColumns() {
+        return physical ? new String[] {STAGING_COLUMN} : columns.clone();
+    }
+
+    /**
+     * @return 创建暂存表时读取地址的列表，列名与 {@link #getStagingColumns()} 一致
+     */
+    public String getStagingSelectList() {
+        return physical ? selectExpressions[0] + " AS " + STAGING_COLUMN : getSelectList();
+    }
+
+    /**
+     * 生成原表和暂存表按地址关联的条件
+     *
+     * @param target 原表别名
+     * @param staging 暂存表别名
+     * @return SQL条件
+     */
+    public String getJoinCondition(String target, String staging) {
+        String[] stagingColumns = getStagingColumns();
+        StringBuilder condition = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                condition.append(" AND ");
+            }
+            condition.append(target).append('.').append(columns[i]).append(" = ")
+                     .append(String.format(valueFormat, staging + "." + stagingColumns[i]));
+        }
+        return condition.toString();
+    }
+
+    /**
+     * 生成地址大于（下界）或小于等于（上界）指定值的条件，参数用 {@link #bindBound} 绑定
+     *
+     * @param bound 边界值，复合主键可以只包含前几列
+     * @param lower true 为不包含的下界，false 为包含的上界
+     * @return SQL条件
+     */
+    String getBoundCondition(Object bound, boolean lower) {
+        int width = components(bound).length;
+        String last = lower ? " > " : " <= ";
+        String parameter = String.format(valueFormat, "?");
+        if (width == 1) {
+            return columns[0] + last + parameter;
+        }
+        String strict = lower ? " > " : " < ";
+        StringBuilder condition = new StringBuilder("(");
+        for (int j = 0; j < width; j++) {
+            condition.append(j == 0 ? "(" : " OR (");
+            for (int k = 0; k < j; k++) {
+                condition.append(columns[k]).append(" = ").append(parameter).append(" AND ");
+            }
+            condition.append(columns[j]).append(j == width - 1 ? last : strict).append(parameter).append(')');
+        }
+        return condition.append(')').toString();
+    }
+
+    /**
+     * 绑定 {@link #getBoundCondition} 中的参数
+     *
+     * @param stmt 预编译语句
+     * @param paramIndex 第一个参数的位置
+     * @param bound 边界值
+     * @return 下一个参数的位置
+     */
+    int bindBound(PreparedStatement stmt, int paramIndex, Object bound) throws SQLException {
+        Object[] values = components(bound);
+        for (int j = 0; j < values.length; j++) {
+            for (int k = 0; k <= j; k++) {
+                stmt.setObject(paramIndex++, values[k]);
+            }
+        }
+        return paramIndex;
+    }
+
+    /**
+     * 从查询结果集的前几列读取当前行的地址
+     *
+     * @param rs 结果集
+     * @return 地址值
+     */
+    public Object read(ResultSet rs) throws SQLException {
+        if (columns.length == 1) {
+            return rs.getObject(1);
+        }
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rs.getObject(i + 1);
+        }
+        return values;
+    }
+
+    /**
+     * 绑定 {@link #getMatchCondition()} 中的参数
+     *
+     * @param stmt 预编译语句
+     * @param paramIndex 第一个参数的位置
+     * @param address 地址值
+     * @return 下一个参数的位置
+     */
+    public int bind(PreparedStatement stmt, int paramIndex, Object address) throws SQLException {
+        if (columns.length == 1) {
+            stmt.setObject(paramIndex, address);
+            return paramIndex + 1;
+        }
+        for (Object value : (Object[]) address) {
+            stmt.setObject(paramIndex++, value);
+        }
+        return paramIndex;
+    }
+
+    /**
+     * @param address 地址值或边界值
+     * @return 按列展开的值
+     */
+    static Object[] components(Object address) {
+        return address instanceof Object[] ? (Object[]) address : new Object[] {address};
+    }
+
+    @Override
+    public String toString() {
+        return physical ? columns[0] : "PRIMARY KEY (" + String.join(", ", columns) + ")";
+    }
+}
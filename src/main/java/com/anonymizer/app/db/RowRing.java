@@ -0,0 +1,173 @@
+package com.anonymizer.app.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 在一个工作单元的读、脱敏、写三个阶段之间传递行的有界环形缓冲区，槽位及其中的数组在整个单元中复用
+ *
+ * 每行有一个从0开始的序号，存放在序号对容量取模的槽位中。读线程按序号填充并发布槽位；脱敏线程按序号分工，
+ * 第 w 个线程处理序号除以线程数余 w 的行；写线程按序号顺序取出脱敏后的行，写完后释放槽位，读线程才能复用。
+ * 各阶段只通过各自的序号计数器同步，不使用锁；下游处理不过来时上游等待（背压），等待时先自旋，再逐渐延长休眠时间。
+ * 写线程按读取顺序写入，提交时记录的水位与顺序处理时一致。
+ */
+final class RowRing {
+    /** 自旋等待的次数，之后开始休眠 */
+    private static final int SPIN_TRIES = 200;
+    /** 最长的单次休眠时间（纳秒） */
+    private static final long MAX_PARK_NANOS = 1_000_000L;
+
+    /**
+     * 环形缓冲区中的一行
+     */
+    static final class Slot {
+        /** 行地址（见 {@link RowAddress#read}） */
+        Object address;
+        /** 读取的原始值 */
+        final String[] originals;
+        /** 脱敏后的值 */
+        final String[] values;
+
+        Slot(int columnCount) {
+            this.originals = new String[columnCount];
+            this.values = new String[columnCount];
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(-1);
+    private final AtomicLong[] transformed;
+    private final AtomicLong released = new AtomicLong(-1);
+    /** 读取结束后为总行数，之前为 Long.MAX_VALUE */
+    private volatile long end = Long.MAX_VALUE;
+    private volatile boolean aborted;
+
+    /**
+     * @param capacity 槽位数，向上取整为2的幂
+     * @param columnCount 每行的列数
+     * @param workers 脱敏线程数
+     */
+    RowRing(int capacity, int columnCount, int workers) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(columnCount);
+        }
+        this.transformed = new AtomicLong[workers];
+        for (int i = 0; i < workers; i++) {
+            transformed[i] = new AtomicLong(-1);
+        }
+    }
+
+    /**
+     * 读线程：等待写线程释放序号为 sequence 的行要使用的槽位
+     *
+     * @param sequence 行序号，从0开始连续递增
+     * @return 槽位，已中止时返回null
+     */
+    Slot claim(long sequence) {
+        return await(released, sequence - slots.length, Long.MIN_VALUE) ? slots[(int) (sequence & mask)] : null;
+    }
+
+    /**
+     * 读线程：槽位已经填充完毕，交给脱敏线程
+     *
+     * @param sequence 行序号
+     */
+    void publish(long sequence) {
+        published.lazySet(sequence);
+    }
+
+    /**
+     * 读线程：没有更多的行
+     *
+     * @param rows 发布的总行数
+     */
+    void finish(long rows) {
+        end = rows;
+    }
+
+    /**
+     * 脱敏线程：等待读线程发布序号为 sequence 的行
+     *
+     * @param sequence 行序号
+     * @return 槽位，读取已经结束或已中止时返回null
+     */
+    Slot awaitPublished(long sequence) {
+        return await(published, sequence, sequence) ? slots[(int) (sequence & mask)] : null;
+    }
+
+    /**
+     * 脱敏线程：槽位中的行已经脱敏，交给写线程
+     *
+     * @param worker 脱敏线程的编号
+     * @param sequence 行序号
+     */
+    void markTransformed(int worker, long sequence) {
+        transformed[worker].lazySet(sequence);
+    }
+
+    /**
+     * 写线程：等待序号为 sequence 的行脱敏完成
+     *
+     * @param sequence 行序号
+     * @return 槽位，所有行已经写完或已中止时返回null
+     */
+    Slot awaitTransformed(long sequence) {
+        AtomicLong worker = transformed[(int) (sequence % transformed.length)];
+        return await(worker, sequence, sequence) ? slots[(int) (sequence & mask)] : null;
+    }
+
+    /**
+     * 写线程：槽位中的行已经写入，读线程可以复用
+     *
+     * @param sequence 行序号
+     */
+    void release(long sequence) {
+        released.lazySet(sequence);
+    }
+
+    /**
+     * 中止所有阶段，正在等待的线程返回null
+     */
+    void abort() {
+        aborted = true;
+    }
+
+    /**
+     * @return 是否已中止
+     */
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * 等待计数器达到 target
+     *
+     * @param limit 读取结束后 limit 不小于总行数时不再等待，读线程传入 Long.MIN_VALUE
+     * @return 计数器达到 target 时返回true，读取结束或已中止时返回false
+     */
+    private boolean await(AtomicLong counter, long target, long limit) {
+        int tries = 0;
+        long parkNanos = 1_000L;
+        while (counter.get() < target) {
+            if (aborted || limit >= end) {
+                // 读取结束前发布的行可能刚刚被发布，再检查一次计数器
+                return !aborted && counter.get() >= target;
+            }
+            if (tries < SPIN_TRIES) {
+                tries++;
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(MAX_PARK_NANOS, parkNanos * 2);
+                if (Thread.currentThread().isInterrupted()) {
+                    aborted = true;
+                }
+            }
+        }
+        return !aborted;
+    }
+}
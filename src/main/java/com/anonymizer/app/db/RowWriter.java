@@ -0,0 +1,25 @@
+package com.anonymizer.app.db;
+
+import java.sql.SQLException;
+
+/**
+ * 脱敏结果的写入方式，每个工作单元创建一个实例，只在一个线程中使用
+ */
+interface RowWriter extends AutoCloseable {
+    
+    /**
+     * 写入一行脱敏后的值
+     * 
+     * @param address 行地址（见 {@link RowAddress#read}）
+     * @param values 与 {@link TablePlan} 中的列一一对应的脱敏值，调用返回后数组可能被复用
+     */
+    void write(Object address, String[] values) throws SQLException;
+    
+    /**
+     * 写入所有剩余的行并提交
+     */
+    void finish() throws SQLException;
+    
+    @Override
+    void close() throws SQLException;
+}
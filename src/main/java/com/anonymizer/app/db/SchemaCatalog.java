@@ -0,0 +1,234 @@
+package com.anonymizer.app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 配置的表的列和主键，启动时用少量的批量目录查询一次读出，规划各表时不再逐表查询数据库
+ *
+ * 每 {@link #BATCH_TABLES} 个表执行一次目录查询（Oracle 的 IN 列表最多1000项）。配置了缓存文件时，
+ * 读取后连同表结构版本（Oracle 的 LAST_DDL_TIME、PostgreSQL 目录行的事务号、MySQL 列定义的校验和）一起保存；
+ * 下次启动时只查询版本，版本和连接的数据库都未变化且缓存包含所有配置的表时直接使用缓存。
+ * 表名不区分大小写；目录中没有的表（或方言不支持目录查询时）由调用方逐表查询。
+ */
+final class SchemaCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaCatalog.class);
+
+    /** 每次目录查询包含的表数 */
+    static final int BATCH_TABLES = 500;
+
+    private final Map<String, List<String>> columns = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, List<String>> primaryKeys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private SchemaCatalog() {
+    }
+
+    /**
+     * 创建不包含任何表的目录，所有表都逐表查询
+     *
+     * @return 目录
+     */
+    static SchemaCatalog empty() {
+        return new SchemaCatalog();
+    }
+
+    /**
+     * 读取表的列和主键，缓存文件有效时从缓存读取
+     *
+     * @param conn 数据库连接
+     * @param dialect 数据库方言
+     * @param tableNames 配置的表名
+     * @param cacheFile 缓存文件，为null时不使用缓存
+     * @return 目录
+     */
+    static SchemaCatalog load(Connection conn, DatabaseDialect dialect, List<String> tableNames, Path cacheFile)
+            throws SQLException {
+        long startTime = System.currentTimeMillis();
+        String version = cacheFile != null ? readVersion(conn, dialect, tableNames) : null;
+        if (version != null && Files.exists(cacheFile)) {
+            SchemaCatalog cached = readCache(cacheFile, version, tableNames);
+            if (cached != null) {
+                logger.info("Loaded schema of {} tables from cache {} in {} ms", cached.columns.size(), cacheFile,
+                        System.currentTimeMillis() - startTime);
+                return cached;
+            }
+            logger.info("Schema cache {} is stale, reading the catalog", cacheFile);
+        }
+
+        SchemaCatalog catalog = new SchemaCatalog();
+        for (List<String> batch : batches(tableNames)) {
+            String catalogQuery = dialect.getCatalogQuery(batch);
+            if (catalogQuery == null) {
+                return catalog;
+            }
+            catalog.read(conn, catalogQuery);
+        }
+        conn.commit();
+        logger.info("Read schema of {} tables from the catalog in {} ms", catalog.columns.size(),
+                System.currentTimeMillis() - startTime);
+
+        if (version != null) {
+            try {
+                catalog.writeCache(cacheFile, version, tableNames);
+            } catch (IOException e) {
+                logger.warn("Cannot write schema cache {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * @param tableName 表名
+     * @return 目录中是否有该表
+     */
+    boolean contains(String tableName) {
+        return columns.containsKey(tableName);
+    }
+
+    /**
+     * @param tableName 表名
+     * @return 按在表中的顺序排列的列，目录中没有该表时返回null
+     */
+    List<String> getColumns(String tableName) {
+        return columns.get(tableName);
+    }
+
+    /**
+     * @param tableName 表名
+     * @return 按在主键中的顺序排列的主键列，表没有主键时为空列表，目录中没有该表时返回null
+     */
+    List<String> getPrimaryKey(String tableName) {
+        return primaryKeys.get(tableName);
+    }
+
+    /**
+     * 把表名转换为SQL字符串字面量列表，用于目录查询的 IN 条件
+     *
+     * @param tableNames 表名
+     * @return 如 'a', 'b'
+     */
+    static String toSqlList(List<String> tableNames) {
+        StringBuilder list = new StringBuilder();
+        for (String tableName : tableNames) {
+            if (list.length() > 0) {
+                list.append(", ");
+            }
+            list.append('\'').append(tableName.replace("'", "''")).append('\'');
+        }
+        return list.toString();
+    }
+
+    private void read(Connection conn, String catalogQuery) throws SQLException {
+        Map<String, TreeMap<Integer, String>> columnsByPosition = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, TreeMap<Integer, String>> keyByPosition = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(catalogQuery)) {
+            while (rs.next()) {
+                String tableName = rs.getString(1);
+                String column = rs.getString(2);
+                columnsByPosition.computeIfAbsent(tableName, t -> new TreeMap<>()).put(rs.getInt(3), column);
+                TreeMap<Integer, String> key = keyByPosition.computeIfAbsent(tableName, t -> new TreeMap<>());
+                int keyPosition = rs.getInt(4);
+                if (!rs.wasNull()) {
+                    key.put(keyPosition, column);
+                }
+            }
+        }
+        for (Map.Entry<String, TreeMap<Integer, String>> entry : columnsByPosition.entrySet()) {
+            columns.put(entry.getKey(), List.copyOf(entry.getValue().values()));
+            primaryKeys.put(entry.getKey(), List.copyOf(keyByPosition.get(entry.getKey()).values()));
+        }
+    }
+
+    /**
+     * 读取所有表的表结构版本，并加上连接的数据库和用户，连接到另一个库时缓存失效
+     *
+     * @return 版本，方言不支持时返回null
+     */
+    private static String readVersion(Connection conn, DatabaseDialect dialect, List<String> tableNames)
+            throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        StringBuilder version = new StringBuilder(metaData.getURL()).append(' ').append(metaData.getUserName());
+        try (Statement stmt = conn.createStatement()) {
+            for (List<String> batch : batches(tableNames)) {
+                String versionQuery = dialect.getCatalogVersionQuery(batch);
+                if (versionQuery == null) {
+                    return null;
+                }
+                try (ResultSet rs = stmt.executeQuery(versionQuery)) {
+                    version.append(' ').append(rs.next() ? rs.getString(1) : null);
+                }
+            }
+        }
+        conn.commit();
+        return version.toString();
+    }
+
+    private static SchemaCatalog readCache(Path cacheFile, String version, List<String> tableNames) {
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            state.load(in);
+        } catch (IOException e) {
+            logger.warn("Cannot read schema cache {}: {}", cacheFile, e.getMessage());
+            return null;
+        }
+        Set<String> cachedTables = new HashSet<>(split(state.getProperty("requested")));
+        if (!version.equals(state.getProperty("version")) || !cachedTables.containsAll(tableNames)) {
+            return null;
+        }
+        SchemaCatalog catalog = new SchemaCatalog();
+        for (String tableName : split(state.getProperty("tables"))) {
+            catalog.columns.put(tableName, split(state.getProperty(tableName + ".columns")));
+            catalog.primaryKeys.put(tableName, split(state.getProperty(tableName + ".primaryKey")));
+        }
+        return catalog;
+    }
+
+    private void writeCache(Path cacheFile, String version, List<String> tableNames) throws IOException {
+        Properties state = new Properties();
+        state.setProperty("version", version);
+        state.setProperty("requested", String.join(",", tableNames));
+        state.setProperty("tables", String.join(",", columns.keySet()));
+        for (Map.Entry<String, List<String>> entry : columns.entrySet()) {
+            state.setProperty(entry.getKey() + ".columns", String.join(",", entry.getValue()));
+            state.setProperty(entry.getKey() + ".primaryKey", String.join(",", primaryKeys.get(entry.getKey())));
+        }
+        Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, "anonymizer schema cache");
+        }
+        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<String> split(String value) {
+        return value == null || value.isEmpty() ? List.of() : Arrays.asList(value.split(","));
+    }
+
+    private static List<List<String>> batches(List<String> tableNames) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < tableNames.size(); i += BATCH_TABLES) {
+            batches.add(tableNames.subList(i, Math.min(tableNames.size(), i + BATCH_TABLES)));
+        }
+        return batches;
+    }
+}
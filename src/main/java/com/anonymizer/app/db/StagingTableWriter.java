@@ -0,0 +1,129 @@
+package com.anonymizer.app.db;
+
+import com.anonymizer.app.metrics.Phase;
+import com.anonymizer.app.metrics.TableMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 先把行地址和脱敏值批量装载到临时的暂存表，再用一条关联更新语句写回原表
+ * 
+ * 暂存表在写连接上准备（会话中的临时表在这里创建，Oracle 使用规划阶段创建的共用全局临时表），
+ * 每装载 chunkRows 行执行一次关联更新并提交，然后清空暂存表，工作单元结束时删除或清空。
+ * 每次关联更新提交后通知最后一行的地址。行地址在更新后会改变时（见 {@link RowAddress#isStable()}），
+ * 中途不提交，以免释放工作单元持有的表锁，所有关联更新在 {@link #finish()} 中一起提交。
+ */
+final class StagingTableWriter implements RowWriter {
+    private static final Logger logger = LoggerFactory.getLogger(StagingTableWriter.class);
+    
+    private final Connection connection;
+    private final DatabaseDialect dialect;
+    private final TablePlan plan;
+    private final String stagingTable;
+    private final String[] stagingColumns;
+    private final String stagingUpdateQuery;
+    private final int chunkRows;
+    private final List<Object[]> rows;
+    private final boolean commitEachChunk;
+    private final Consumer<Object> commitListener;
+    private final TableMetrics metrics;
+    private Object lastAddress;
+    
+    StagingTableWriter(Connection connection, DatabaseDialect dialect, TablePlan plan, String stagingTable,
+                       int chunkRows, Consumer<Object> commitListener, TableMetrics metrics) throws SQLException {
+        this.connection = connection;
+        this.dialect = dialect;
+        this.plan = plan;
+        this.stagingTable = stagingTable;
+        this.chunkRows = chunkRows;
+        this.rows = new ArrayList<>(chunkRows);
+        this.commitListener = commitListener;
+        this.metrics = metrics;
+        RowAddress rowAddress = plan.getRowAddress();
+        this.commitEachChunk = rowAddress.isStable();
+        
+        int columnCount = plan.getColumnCount();
+        String[] columns = new String[columnCount];
+        String[] addressColumns = rowAddress.getStagingColumns();
+        stagingColumns = new String[addressColumns.length + columnCount];
+        System.arraycopy(addressColumns, 0, stagingColumns, 0, addressColumns.length);
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = plan.getColumn(i);
+            stagingColumns[addressColumns.length + i] = columns[i];
+        }
+        this.stagingUpdateQuery = dialect.getStagingUpdateQuery(plan.getTableName(), stagingTable, columns, rowAddress);
+        
+        dialect.createStagingTable(connection, stagingTable, plan.getTableName(), columns, rowAddress);
+        logger.debug("Prepared staging table {} for {}", stagingTable, plan.getTableName());
+    }
+    
+    @Override
+    public void write(Object address, String[] values) throws SQLException {
+        Object[] row = new Object[stagingColumns.length];
+        Object[] addressValues = RowAddress.components(address);
+        System.arraycopy(addressValues, 0, row, 0, addressValues.length);
+        System.arraycopy(values, 0, row, addressValues.length, values.length);
+        rows.add(row);
+        lastAddress = address;
+        
+        if (rows.size() == chunkRows) {
+            flush();
+        }
+    }
+    
+    @Override
+    public void finish() throws SQLException {
+        if (!rows.isEmpty()) {
+            flush();
+        }
+        if (!commitEachChunk) {
+            commit();
+            commitListener.accept(lastAddress);
+        }
+    }
+    
+    private void flush() throws SQLException {
+        long start = System.nanoTime();
+        dialect.loadStagingTable(connection, stagingTable, stagingColumns, rows);
+        metrics.record(Phase.WRITE, System.nanoTime() - start);
+        rows.clear();
+        if (commitEachChunk) {
+            // Oracle直接路径装载后必须先提交才能读取暂存表
+            commit();
+        }
+        try (Statement stmt = connection.createStatement()) {
+            start = System.nanoTime();
+            stmt.executeUpdate(stagingUpdateQuery);
+            metrics.record(Phase.WRITE, System.nanoTime() - start);
+            stmt.executeUpdate("TRUNCATE TABLE " + stagingTable);
+        }
+        if (commitEachChunk) {
+            commit();
+            commitListener.accept(lastAddress);
+        }
+    }
+    
+    private void commit() throws SQLException {
+        long start = System.nanoTime();
+        connection.commit();
+        metrics.record(Phase.COMMIT, System.nanoTime() - start);
+    }
+    
+    @Override
+    public void close() throws SQLException {
+        try {
+            connection.rollback();
+            dialect.dropStagingTable(connection, stagingTable);
+            connection.commit();
+        } catch (SQLException e) {
+            logger.warn("Error releasing staging table {} for {}: {}", stagingTable, plan.getTableName(), e.getMessage());
+        }
+    }
+}
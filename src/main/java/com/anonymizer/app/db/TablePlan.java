@@ -0,0 +1,235 @@
+package com.anonymizer.app.db;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * 表的脱敏执行计划，每个表只生成一次，在该表的所有工作单元之间共享
+ * 
+ * 计划中已经解析好行地址、需要脱敏的列、每列绑定的脱敏规则和更新语句，逐行处理时不再访问配置。
+ * 查询结果集的前 w 列为行地址（w 见 {@link RowAddress#getWidth()}），第 w+i+1 列为 columns[i]
+ * （见 {@link DatabaseDialect#getSelectQuery}）。
+ * 
+ * 启用下推时，能用SQL表达式完成脱敏的列不在 columns 中，而是由一条集合更新语句在数据库端处理。
+ * 
+ * 增量模式下读取和下推更新都只处理水位列在 (watermarkFrom, watermarkTo] 中的行，条件附加在主键范围条件之后。
+ * 第一次运行没有 watermarkFrom，处理水位列不超过 watermarkTo 或为空的行；运行期间写入的更大的值留给下一次运行。
+ * 
+ * 脱敏规则对 NULL 原样返回，所以读取和下推更新都附加 (c1 IS NOT NULL OR c2 IS NOT NULL ...) 条件，
+ * 待脱敏列全为 NULL 的行不会被读出和改写。
+ */
+public final class TablePlan {
+    private final String tableName;
+    private final RowAddress rowAddress;
+    private final String[] columns;
+    private final AnonymizationRule[] rules;
+    private final String updateQuery;
+    private final String[] pushdownColumns;
+    private final String[] pushdownExpressions;
+    private final String watermarkColumn;
+    private final Object watermarkFrom;
+    private final Object watermarkTo;
+    
+    public TablePlan(String tableName, RowAddress rowAddress, String[] columns, AnonymizationRule[] rules,
+                     String updateQuery, String[] pushdownColumns, String[] pushdownExpressions) {
+        this(tableName, rowAddress, columns, rules, updateQuery, pushdownColumns, pushdownExpressions,
+                null, null, null);
+    }
+    
+    private TablePlan(String tableName, RowAddress rowAddress, String[] columns, AnonymizationRule[] rules,
+                      String updateQuery, String[] pushdownColumns, String[] pushdownExpressions,
+                      String watermarkColumn, Object watermarkFrom, Object watermarkTo) {
+        if (columns.length != rules.length) {
+            throw new IllegalArgumentException("Each column needs exactly one rule");
+        }
+        if (pushdownColumns.length != pushdownExpressions.length) {
+            throw new IllegalArgumentException("Each pushdown column needs exactly one expression");
+        }
+        this.tableName = tableName;
+        this.rowAddress = rowAddress;
+        this.columns = columns.clone();
+        this.rules = rules.clone();
+        this.updateQuery = updateQuery;
+        this.pushdownColumns = pushdownColumns.clone();
+        this.pushdownExpressions = pushdownExpressions.clone();
+        this.watermarkColumn = watermarkColumn;
+        this.watermarkFrom = watermarkFrom;
+        this.watermarkTo = watermarkTo;
+    }
+    
+    public String getTableName() {
+        return tableName;
+    }
+    
+    public RowAddress getRowAddress() {
+        return rowAddress;
+    }
+    
+    /**
+     * @return 需要脱敏的列数
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+    
+    /**
+     * @param i 列序号（从0开始）
+     * @return 列名
+     */
+    public String getColumn(int i) {
+        return columns[i];
+    }
+    
+    /**
+     * @param i 列序号（从0开始）
+     * @return 该列绑定的脱敏规则
+     */
+    public AnonymizationRule getRule(int i) {
+        return rules[i];
+    }
+    
+    /**
+     * @param i 列序号（从0开始）
+     * @return 该列在查询结果集中的位置
+     */
+    public int getValueIndex(int i) {
+        return rowAddress.getWidth() + i + 1;
+    }
+    
+    public String getUpdateQuery() {
+        return updateQuery;
+    }
+    
+    /**
+     * 生成只处理水位列在 (from, to] 中的行的增量执行计划
+     * 
+     * @param column 水位列
+     * @param from 上一次运行处理到的水位，为null时不限制（全量处理，包括水位列为空的行）
+     * @param to 本次运行的上限
+     * @return 新的执行计划
+     */
+    public TablePlan withWatermark(String column, Object from, Object to) {
+        return new TablePlan(tableName, rowAddress, columns, rules, updateQuery, pushdownColumns,
+                pushdownExpressions, column, from, to);
+    }
+    
+    /**
+     * @return 增量模式的水位列，全量处理时为null
+     */
+    public String getWatermarkColumn() {
+        return watermarkColumn;
+    }
+    
+    /**
+     * @return 本次运行处理到的水位上限，表成功处理后记录为下一次运行的起点
+     */
+    public Object getWatermarkTo() {
+        return watermarkTo;
+    }
+    
+    /**
+     * 绑定 {@link #getSelectQuery} 和 {@link #getPushdownQuery} 中的参数
+     * 
+     * @param stmt 预编译语句
+     * @param range 主键范围
+     */
+    public void bind(PreparedStatement stmt, KeyRange range) throws SQLException {
+        int paramIndex = range.bind(stmt, 1, rowAddress);
+        if (watermarkColumn == null) {
+            return;
+        }
+        if (watermarkFrom != null) {
+            stmt.setObject(paramIndex++, watermarkFrom);
+        }
+        if (watermarkTo != null) {
+            stmt.setObject(paramIndex, watermarkTo);
+        }
+    }
+    
+    /**
+     * 组合主键范围条件、增量水位条件和待脱敏列的非空条件
+     * 
+     * @param range 主键范围
+     * @param targetColumns 语句处理的列，全为 NULL 的行被过滤掉
+     */
+    private String getCondition(KeyRange range, String[] targetColumns) {
+        String condition = range.getCondition(rowAddress);
+        if (watermarkColumn != null) {
+            condition = and(condition, getWatermarkCondition());
+        }
+        return and(condition, getNotNullCondition(targetColumns));
+    }
+    
+    /**
+     * 水位列在 (watermarkFrom, watermarkTo] 中。第一次运行时水位列为空的行也要处理，之后的运行不再读到它们
+     */
+    private String getWatermarkCondition() {
+        if (watermarkFrom == null) {
+            return watermarkTo != null ? "(" + watermarkColumn + " <= ? OR " + watermarkColumn + " IS NULL)" : null;
+        }
+        return watermarkColumn + " > ?" + (watermarkTo != null ? " AND " + watermarkColumn + " <= ?" : "");
+    }
+    
+    private static String getNotNullCondition(String[] targetColumns) {
+        if (targetColumns.length == 0) {
+            return null;
+        }
+        StringBuilder condition = new StringBuilder();
+        for (int i = 0; i < targetColumns.length; i++) {
+            condition.append(i == 0 ? "(" : " OR ").append(targetColumns[i]).append(" IS NOT NULL");
+        }
+        return condition.append(')').toString();
+    }
+    
+    private static String and(String left, String right) {
+        if (left == null) {
+            return right;
+        }
+        return right == null ? left : left + " AND " + right;
+    }
+    
+    /**
+     * 生成读取指定主键范围的查询语句
+     * 
+     * @param dialect 数据库方言
+     * @param range 主键范围
+     * @return SQL语句
+     */
+    public String getSelectQuery(DatabaseDialect dialect, KeyRange range) {
+        return dialect.getSelectQuery(tableName, columns, rowAddress, getCondition(range, columns));
+    }
+    
+    /**
+     * @return 是否有列在数据库端脱敏
+     */
+    public boolean hasPushdown() {
+        return pushdownColumns.length > 0;
+    }
+    
+    /**
+     * 生成在数据库端脱敏指定主键范围的集合更新语句
+     * 
+     * @param dialect 数据库方言
+     * @param range 主键范围
+     * @return SQL语句
+     */
+    public String getPushdownQuery(DatabaseDialect dialect, KeyRange range) {
+        return dialect.getExpressionUpdateQuery(tableName, pushdownColumns, pushdownExpressions,
+                getCondition(range, pushdownColumns));
+    }
+    
+    @Override
+    public String toString() {
+        String plan = tableName + Arrays.toString(columns) + " by " + rowAddress;
+        if (hasPushdown()) {
+            plan += " pushdown" + Arrays.toString(pushdownColumns);
+        }
+        if (watermarkColumn != null) {
+            plan += " incremental " + watermarkColumn + " in (" + watermarkFrom + ", " + watermarkTo + "]";
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,124 @@
+package com.anonymizer.app.db;
+
+import org.slf4j.Logger;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 单个表的脱敏处理结果
+ */
+public class TableResult {
+    private final String tableName;
+    private final long rows;
+    private final long elapsedMillis;
+    private final Exception error;
+
+    private TableResult(String tableName, long rows, long elapsedMillis, Exception error) {
+        this.tableName = tableName;
+        this.rows = rows;
+        this.elapsedMillis = elapsedMillis;
+        this.error = error;
+    }
+
+    /**
+     * 创建成功的处理结果
+     *
+     * @param tableName 表名
+     * @param rows 处理的行数
+     * @param elapsedMillis 耗时（毫秒）
+     * @return 处理结果
+     */
+    public static TableResult success(String tableName, long rows, long elapsedMillis) {
+        return new TableResult(tableName, rows, elapsedMillis, null);
+    }
+
+    /**
+     * 创建失败的处理结果
+     *
+     * @param tableName 表名
+     * @param elapsedMillis 耗时（毫秒）
+     * @param error 失败原因
+     * @return 处理结果
+     */
+    public static TableResult failure(String tableName, long elapsedMillis, Exception error) {
+        return new TableResult(tableName, 0, elapsedMillis, error);
+    }
+
+    /**
+     * 合并同一个表多个工作单元的处理结果
+     *
+     * @param tableName 表名
+     * @param parts 各工作单元的处理结果
+     * @return 合并后的结果，任一单元失败则整个表视为失败
+     */
+    public static TableResult combine(String tableName, List<TableResult> parts) {
+        long rows = 0;
+        long elapsedMillis = 0;
+        Exception error = null;
+        for (TableResult part : parts) {
+            rows += part.rows;
+            elapsedMillis = Math.max(elapsedMillis, part.elapsedMillis);
+            if (error == null) {
+                error = part.error;
+            }
+        }
+        return new TableResult(tableName, error == null ? rows : 0, elapsedMillis, error);
+    }
+
+    /**
+     * 输出所有表的汇总信息
+     *
+     * @param logger 日志记录器
+     * @param results 各表的处理结果
+     * @param elapsedMillis 总耗时（毫秒）
+     */
+    public static void logSummary(Logger logger, List<TableResult> results, long elapsedMillis) {
+        long totalRows = 0;
+        int succeeded = 0;
+        for (TableResult result : results) {
+            if (result.isSuccess()) {
+                succeeded++;
+                totalRows += result.getRows();
+                logger.info("  {}: {} rows in {} ms", result.getTableName(), result.getRows(), result.getElapsedMillis());
+            } else {
+                logger.info("  {}: FAILED after {} ms ({})", result.getTableName(), result.getElapsedMillis(),
+                        result.getError().getMessage());
+            }
+        }
+        logger.info("Completed anonymization: {} succeeded, {} failed, {} rows in {} ms",
+                succeeded, results.size() - succeeded, totalRows, elapsedMillis);
+    }
+
+    /**
+     * 如果有表处理失败则抛出异常
+     *
+     * @param results 各表的处理结果
+     */
+    public static void throwIfFailed(List<TableResult> results) throws SQLException {
+        long failedTables = results.stream().filter(result -> !result.isSuccess()).count();
+        if (failedTables > 0) {
+            throw new SQLException(failedTables + " of " + results.size() + " tables failed to anonymize");
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
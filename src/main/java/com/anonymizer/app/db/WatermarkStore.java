@@ -0,0 +1,70 @@
+package com.anonymizer.app.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * 记录增量脱敏的高水位：每个表上一次成功运行时处理到的水位列最大值
+ *
+ * 与 {@link Checkpoint} 不同，这个文件跨运行保留，不随 --resume 清空；只有整个表成功处理后才更新该表的水位。
+ * 删除文件（或其中某个表的记录）即可让该表下次全量脱敏。
+ */
+final class WatermarkStore {
+    private static final Logger logger = LoggerFactory.getLogger(WatermarkStore.class);
+
+    private final Path file;
+    private final Properties state = new Properties();
+
+    private WatermarkStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 打开水位文件，不存在时从空状态开始
+     *
+     * @param file 水位文件
+     * @return 水位记录
+     */
+    static WatermarkStore open(Path file) throws IOException {
+        WatermarkStore store = new WatermarkStore(file);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                store.state.load(in);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * 获取表上一次成功运行处理到的水位
+     *
+     * @param tableName 表名
+     * @return 水位，没有记录时返回null
+     */
+    synchronized Object get(String tableName) {
+        return Checkpoint.decode(state.getProperty(tableName));
+    }
+
+    /**
+     * 记录表的新水位并写回文件
+     *
+     * @param tableName 表名
+     * @param watermark 本次运行处理到的水位列最大值
+     * @throws IOException 写文件失败，内存中的记录仍然更新，之后写入其他表的水位时一并重试
+     */
+    synchronized void put(String tableName, Object watermark) throws IOException {
+        String encoded = Checkpoint.encode(watermark);
+        if (encoded.equals(state.getProperty(tableName))) {
+            return;
+        }
+        state.setProperty(tableName, encoded);
+        Checkpoint.store(state, file, "anonymizer incremental watermarks");
+        logger.info("Incremental watermark of {} advanced to {}", tableName, watermark);
+    }
+}
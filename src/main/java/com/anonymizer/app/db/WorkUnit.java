@@ -0,0 +1,60 @@
+package com.anonymizer.app.db;
+
+/**
+ * 脱敏工作单元：一个表中的一个主键范围，从检查点续跑时为范围中水位之后的部分
+ */
+public class WorkUnit {
+    private final TablePlan plan;
+    private final KeyRange range;
+    private final int rangeIndex;
+    private final int rangeCount;
+    private final Object resumedFrom;
+
+    public WorkUnit(TablePlan plan, KeyRange range, int rangeIndex, int rangeCount) {
+        this(plan, range, rangeIndex, rangeCount, null);
+    }
+
+    /**
+     * @param resumedFrom 续跑的起点水位，处理完整范围时为null
+     */
+    public WorkUnit(TablePlan plan, KeyRange range, int rangeIndex, int rangeCount, Object resumedFrom) {
+        this.plan = plan;
+        this.range = range;
+        this.rangeIndex = rangeIndex;
+        this.rangeCount = rangeCount;
+        this.resumedFrom = resumedFrom;
+    }
+
+    public TablePlan getPlan() {
+        return plan;
+    }
+
+    public String getTableName() {
+        return plan.getTableName();
+    }
+
+    public KeyRange getRange() {
+        return range;
+    }
+
+    public int getRangeIndex() {
+        return rangeIndex;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * @return 续跑的起点水位，处理完整范围时为null
+     */
+    public Object getResumedFrom() {
+        return resumedFrom;
+    }
+
+    @Override
+    public String toString() {
+        String tableName = plan.getTableName();
+        return rangeCount > 1 ? tableName + " range " + (rangeIndex + 1) + "/" + rangeCount : tableName;
+    }
+}
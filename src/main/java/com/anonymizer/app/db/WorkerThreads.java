@@ -0,0 +1,42 @@
+package com.anonymizer.app.db;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 创建工作单元使用的虚拟线程
+ *
+ * 这是Java 11上的实现，总是不可用。在Java 21上用 java21 profile 构建时，
+ * src/main/java21 中的同名类被编译到多版本JAR的 META-INF/versions/21 下，在Java 21及以上运行时替换这个类。
+ */
+final class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * @return 当前运行环境是否支持虚拟线程
+     */
+    static boolean isVirtualAvailable() {
+        return false;
+    }
+
+    /**
+     * 创建为每个任务启动一个虚拟线程的执行器
+     *
+     * @param namePrefix 线程名前缀
+     * @return 执行器
+     */
+    static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 and a build with the java21 profile");
+    }
+
+    /**
+     * 使虚拟线程调度器的载体线程数不少于 threads
+     *
+     * @param threads 可能同时在驱动中等待的线程数
+     * @return 载体线程数
+     */
+    static int reserveCarrierThreads(int threads) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 and a build with the java21 profile");
+    }
+}
@@ -0,0 +1,29 @@
+package com.anonymizer.app.db;
+
+/**
+ * 脱敏结果写回数据库的方式
+ */
+public enum WriteMode {
+    /** 按主键逐行批量 UPDATE */
+    UPDATE,
+    /** 批量装载到暂存表，再用一条关联更新写回 */
+    STAGING;
+    
+    /**
+     * 从字符串解析写入方式
+     * 
+     * @param mode 写入方式字符串
+     * @return 写入方式枚举，无法解析时默认为UPDATE
+     */
+    public static WriteMode fromString(String mode) {
+        if (mode == null || mode.isEmpty()) {
+            return UPDATE;
+        }
+        
+        try {
+            return valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return UPDATE;
+        }
+    }
+}
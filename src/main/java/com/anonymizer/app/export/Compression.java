@@ -0,0 +1,68 @@
+package com.anonymizer.app.export;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 导出文件的压缩方式
+ */
+public enum Compression {
+    /** 不压缩 */
+    NONE(""),
+    /** gzip，兼容性最好 */
+    GZIP(".gz"),
+    /** zstd，压缩和解压都比gzip快得多 */
+    ZSTD(".zst");
+
+    /** gzip 内部缓冲区大小，减少对 Deflater 的调用次数 */
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+
+    Compression(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * 在输出流外包装压缩流，关闭返回的流时写出压缩尾部并关闭底层流
+     *
+     * @param out 底层输出流
+     * @return 压缩输出流
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdOutputStream(out);
+            case NONE:
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * 从字符串解析压缩方式
+     *
+     * @param compression 压缩方式字符串
+     * @return 压缩方式枚举，无法解析时默认为GZIP
+     */
+    public static Compression fromString(String compression) {
+        if (compression == null || compression.isEmpty()) {
+            return GZIP;
+        }
+
+        try {
+            return valueOf(compression.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return GZIP;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.RandomSources;
+import com.anonymizer.app.anonymizer.RuleResolver;
+import com.anonymizer.app.config.ConfigLoader;
+import com.anonymizer.app.db.DatabaseType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 离线模式：直接改写 mysqldump / pg_dump 生成的SQL文件，不需要连接数据库
+ *
+ * 输入文件按窗口做内存映射，由 {@link DumpScanner} 在调用线程中切分为片段，片段按大约
+ * {@link #TASK_SIZE} 字节分组后交给工作线程解析和脱敏，改写结果按原顺序写入输出文件。
+ * 同时处理的任务数有上限，内存占用与转储文件的大小无关。
+ *
+ * 配置的表中有无法识别的语句或数据行时运行失败并删除不完整的输出文件，不会输出未脱敏的数据。
+ */
+public class DumpAnonymizer {
+    private static final Logger logger = LoggerFactory.getLogger(DumpAnonymizer.class);
+
+    /** 每次映射的最大字节数，单行（或单条语句）不能超过该大小 */
+    private static final long WINDOW_SIZE = 1L << 30;
+    /** 每个任务处理的字节数 */
+    private static final int TASK_SIZE = 4 * 1024 * 1024;
+
+    private final ConfigLoader configLoader;
+    private final RuleResolver ruleResolver;
+    private final Long randomSeed;
+    private final boolean backslashEscapes;
+
+    public DumpAnonymizer(ConfigLoader configLoader) {
+        this.configLoader = configLoader;
+        this.ruleResolver = new RuleResolver(configLoader);
+        this.randomSeed = configLoader.getRandomSeed();
+        this.backslashEscapes = configLoader.getDumpType() == DatabaseType.MYSQL;
+    }
+
+    /**
+     * 改写配置的转储文件
+     *
+     * @throws IOException 读写失败，或配置的表中有无法识别的语句或数据行
+     */
+    public void anonymizeDump() throws IOException {
+        Path input = Paths.get(configLoader.getDumpInput());
+        Path output = Paths.get(configLoader.getDumpOutput());
+        int workers = configLoader.getDumpWorkers();
+        long startTime = System.currentTimeMillis();
+        logger.info("Starting offline anonymization of {} ({} format) to {} with {} worker(s)", input,
+                configLoader.getDumpType(), output, workers);
+
+        DumpScanner scanner = new DumpScanner(backslashEscapes, ruleResolver, configLoader.getTables());
+        DumpRewriter rewriter = new DumpRewriter(backslashEscapes);
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "dump-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 等待写出的任务，按提交顺序排列；数量有上限以限制内存占用
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        int maxPending = workers * 4;
+        long sequence = 0;
+        long inputBytes;
+        boolean completed = false;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             OutputStream out = configLoader.getDumpCompression()
+                     .wrap(new ChannelOutputStream(output, configLoader.getExportBufferSize()))) {
+            inputBytes = in.size();
+            long position = 0;
+            while (position < inputBytes) {
+                long length = Math.min(WINDOW_SIZE, inputBytes - position);
+                boolean endOfInput = position + length == inputBytes;
+                ByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int limit = endOfInput ? (int) length : lastLineEnd(window, (int) length);
+
+                List<DumpSegment> segments = scanner.scan(window, limit, endOfInput);
+                if (scanner.getConsumed() == 0) {
+                    throw new IOException("Statement at offset " + position + " is larger than "
+                            + WINDOW_SIZE + " bytes");
+                }
+
+                for (List<DumpSegment> task : groupTasks(window, segments)) {
+                    long taskSequence = sequence++;
+                    pending.add(executor.submit(() -> rewriteTask(window, task, rewriter, taskSequence)));
+                    while (pending.size() >= maxPending) {
+                        out.write(pending.poll().get());
+                    }
+                }
+                position += scanner.getConsumed();
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.poll().get());
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while anonymizing dump", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Dump worker failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (!completed) {
+                Files.deleteIfExists(output);
+            }
+        }
+
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        logger.info("Completed offline anonymization: {} MB in {} ms ({} MB/s)", inputBytes >> 20, elapsedMillis,
+                elapsedMillis == 0 ? 0 : (inputBytes >> 20) * 1000 / elapsedMillis);
+        ruleResolver.logCacheStats();
+    }
+
+    /**
+     * 把片段按大约 TASK_SIZE 字节分组；过大的原样输出片段和 COPY 片段按行拆开，使每个任务的大小有上限
+     */
+    private static List<List<DumpSegment>> groupTasks(ByteBuffer window, List<DumpSegment> segments) {
+        List<List<DumpSegment>> tasks = new ArrayList<>();
+        List<DumpSegment> current = new ArrayList<>();
+        int currentBytes = 0;
+        for (DumpSegment segment : segments) {
+            int start = segment.start;
+            while (segment.kind != DumpSegment.Kind.INSERT && segment.end - start > TASK_SIZE) {
+                int split = segment.kind == DumpSegment.Kind.COPY
+                        ? lastLineEnd(window, start, start + TASK_SIZE)
+                        : start + TASK_SIZE;
+                if (split <= start) {
+                    break;
+                }
+                tasks.add(singleton(new DumpSegment(segment.kind, start, split, segment.table, 0)));
+                start = split;
+            }
+            DumpSegment rest = start == segment.start ? segment
+                    : new DumpSegment(segment.kind, start, segment.end, segment.table, segment.headerLength);
+
+            current.add(rest);
+            currentBytes += rest.length();
+            if (currentBytes >= TASK_SIZE) {
+                tasks.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+        }
+        if (!current.isEmpty()) {
+            tasks.add(current);
+        }
+        return tasks;
+    }
+
+    /**
+     * 在工作线程中改写一组片段
+     */
+    private byte[] rewriteTask(ByteBuffer window, List<DumpSegment> task, DumpRewriter rewriter, long sequence)
+            throws IOException {
+        if (randomSeed != null) {
+            // 按任务序号派生随机序列，结果与任务被哪个线程处理无关
+            RandomSources.bind(RandomSources.seeded(randomSeed, "dump#" + sequence));
+        }
+        try {
+            int size = 0;
+            for (DumpSegment segment : task) {
+                size += segment.length();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size + size / 16);
+            for (DumpSegment segment : task) {
+                byte[] bytes = DumpScanner.bytes(window, segment.start, segment.end);
+                switch (segment.kind) {
+                    case INSERT:
+                        out.write(bytes, 0, segment.headerLength);
+                        String values = new String(bytes, segment.headerLength, bytes.length - segment.headerLength,
+                                StandardCharsets.UTF_8);
+                        out.writeBytes(rewriter.rewriteInsert(values, segment.table).getBytes(StandardCharsets.UTF_8));
+                        break;
+                    case COPY:
+                        String lines = new String(bytes, StandardCharsets.UTF_8);
+                        out.writeBytes(rewriter.rewriteCopy(lines, segment.table).getBytes(StandardCharsets.UTF_8));
+                        break;
+                    case PASS:
+                    default:
+                        out.writeBytes(bytes);
+                        break;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            RandomSources.unbind();
+        }
+    }
+
+    private static List<DumpSegment> singleton(DumpSegment segment) {
+        List<DumpSegment> task = new ArrayList<>(1);
+        task.add(segment);
+        return task;
+    }
+
+    private static int lastLineEnd(ByteBuffer window, int length) {
+        return lastLineEnd(window, 0, length);
+    }
+
+    /**
+     * @return [start, end) 中最后一个换行符之后的位置，没有换行符时返回 start
+     */
+    private static int lastLineEnd(ByteBuffer window, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (window.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return start;
+    }
+}
@@ -0,0 +1,228 @@
+package com.anonymizer.app.export;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * 把一个表的行写成按大小切分的转储文件
+ *
+ * 文件依次命名为 表名.part-00001.sql.gz、表名.part-00002.sql.gz……。每个文件都可以单独使用：
+ * SQL 格式的切分点总在语句之间，CSV 格式的每个文件都带表头。写入的字节数达到上限后，
+ * 在下一个语句（或行）结束时切换到新文件，因此内存占用与表的大小无关。
+ */
+class DumpFileWriter implements Closeable {
+    /** 文本编码缓冲区大小（字符） */
+    private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Path directory;
+    private final String tableName;
+    private final String[] columns;
+    private final ExportFormat format;
+    private final Compression compression;
+    private final long maxFileBytes;
+    private final int bufferSize;
+    private final int insertBatchSize;
+    private final boolean backslashEscapes;
+    private final String insertPrefix;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private ChannelOutputStream channelStream;
+    private Writer writer;
+    private int partCount;
+    private int rowsInStatement;
+
+    /**
+     * @param directory 输出目录
+     * @param tableName 表名
+     * @param columns 列名，顺序与写入的行一致
+     * @param format 导出格式
+     * @param compression 压缩方式
+     * @param maxFileBytes 单个文件的大小上限（字节，压缩后）
+     * @param bufferSize 直接缓冲区大小（字节）
+     * @param insertBatchSize SQL 格式下每条 INSERT 语句包含的行数
+     * @param backslashEscapes SQL 格式的字符串字面量是否使用反斜杠转义（MySQL）
+     */
+    DumpFileWriter(Path directory, String tableName, String[] columns, ExportFormat format, Compression compression,
+                   long maxFileBytes, int bufferSize, int insertBatchSize, boolean backslashEscapes) {
+        this.directory = directory;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.format = format;
+        this.compression = compression;
+        this.maxFileBytes = maxFileBytes;
+        this.bufferSize = bufferSize;
+        this.insertBatchSize = insertBatchSize;
+        this.backslashEscapes = backslashEscapes;
+        this.insertPrefix = "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES\n";
+    }
+
+    /**
+     * 写入一行
+     *
+     * @param row 各列的值，顺序与列名一致
+     */
+    void write(Object[] row) throws IOException {
+        if (writer == null) {
+            openPart();
+        }
+
+        line.setLength(0);
+        if (format == ExportFormat.SQL) {
+            line.append(rowsInStatement == 0 ? insertPrefix : ",\n").append('(');
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                appendSqlLiteral(row[i]);
+            }
+            line.append(')');
+            rowsInStatement++;
+            if (rowsInStatement == insertBatchSize) {
+                line.append(";\n");
+                rowsInStatement = 0;
+            }
+        } else {
+            appendCsvRecord(row);
+        }
+        writer.append(line);
+
+        // 只在语句或行结束时切分文件，保证每个文件都可以单独导入
+        if (rowsInStatement == 0 && channelStream.getBytesWritten() >= maxFileBytes) {
+            closePart();
+        }
+    }
+
+    /**
+     * 获取已写出的文件数
+     *
+     * @return 文件数
+     */
+    int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * 结束最后一条语句并关闭当前文件；表为空时也会生成一个文件（CSV 只有表头）
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer == null && partCount == 0) {
+            openPart();
+        }
+        closePart();
+    }
+
+    private void openPart() throws IOException {
+        partCount++;
+        String fileName = String.format("%s.part-%05d%s%s", tableName, partCount, format.getExtension(),
+                compression.getExtension());
+        channelStream = new ChannelOutputStream(directory.resolve(fileName), bufferSize);
+        writer = new BufferedWriter(new OutputStreamWriter(compression.wrap(channelStream), StandardCharsets.UTF_8),
+                WRITER_BUFFER_SIZE);
+        rowsInStatement = 0;
+
+        if (format == ExportFormat.CSV) {
+            line.setLength(0);
+            appendCsvRecord(columns);
+            writer.append(line);
+        }
+    }
+
+    private void closePart() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (rowsInStatement > 0) {
+                writer.write(";\n");
+                rowsInStatement = 0;
+            }
+        } finally {
+            writer.close();
+            writer = null;
+            channelStream = null;
+        }
+    }
+
+    /**
+     * 追加一个SQL字面量：字符串按目标数据库的规则转义（见 {@link DumpRewriter#appendQuoted}），二进制使用十六进制字面量
+     */
+    private void appendSqlLiteral(Object value) {
+        if (value == null) {
+            line.append("NULL");
+        } else if (value instanceof BigDecimal) {
+            line.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            line.append(value);
+        } else if (value instanceof Boolean) {
+            line.append((Boolean) value ? "TRUE" : "FALSE");
+        } else if (value instanceof byte[]) {
+            line.append("X'");
+            appendHex((byte[]) value);
+            line.append('\'');
+        } else {
+            DumpRewriter.appendQuoted(line, value.toString(), backslashEscapes);
+        }
+    }
+
+    /**
+     * 追加一条CSV记录：NULL 为空字段，包含逗号、引号、换行的值以及空字符串加双引号
+     */
+    private void appendCsvRecord(Object[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = row[i];
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof byte[]) {
+                appendHex((byte[]) value);
+                continue;
+            }
+
+            String text = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+            if (needsQuoting(text)) {
+                line.append('"');
+                for (int j = 0; j < text.length(); j++) {
+                    char c = text.charAt(j);
+                    if (c == '"') {
+                        line.append('"');
+                    }
+                    line.append(c);
+                }
+                line.append('"');
+            } else {
+                line.append(text);
+            }
+        }
+        line.append("\r\n");
+    }
+
+    private static boolean needsQuoting(String text) {
+        if (text.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendHex(byte[] bytes) {
+        for (byte b : bytes) {
+            line.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+
+import java.io.IOException;
+
+/**
+ * 改写转储文件中 INSERT 语句的值列表和 COPY 块的数据行，对需要脱敏的列应用规则
+ *
+ * 只替换需要脱敏的字段，语句的其余部分原样保留，NULL 保持不变。需要脱敏的列中出现十六进制、函数调用等无法识别的字面量，
+ * 或者一行的字段数与列数不一致时抛出异常，不把无法脱敏的数据原样输出。
+ */
+class DumpRewriter {
+    private final boolean backslashEscapes;
+
+    /**
+     * @param backslashEscapes 字符串字面量是否使用反斜杠转义（MySQL）
+     */
+    DumpRewriter(boolean backslashEscapes) {
+        this.backslashEscapes = backslashEscapes;
+    }
+
+    /**
+     * 改写 INSERT 语句中 VALUES 之后的部分
+     *
+     * @param values VALUES 关键字之后到语句结尾的文本，例如 " (1,'a'),(2,'b');\n"
+     * @param table 表信息
+     * @return 改写后的文本
+     * @throws IOException 行的字段数与列数不一致，或需要脱敏的列中有无法识别的字面量
+     */
+    String rewriteInsert(String values, DumpTable table) throws IOException {
+        StringBuilder out = null;
+        int copied = 0;
+        int n = values.length();
+        int i = 0;
+        while (i < n) {
+            char c = values.charAt(i);
+            if (c == ';') {
+                break;
+            }
+            if (c != '(') {
+                i++;
+                continue;
+            }
+
+            // 一行的值列表
+            i++;
+            int column = 0;
+            while (i < n) {
+                int fieldStart = skipWhitespace(values, i);
+                int fieldEnd = scanField(values, fieldStart);
+                AnonymizationRule rule = table.getRule(column);
+                if (rule != null) {
+                    int literalEnd = fieldEnd;
+                    while (literalEnd > fieldStart && Character.isWhitespace(values.charAt(literalEnd - 1))) {
+                        literalEnd--;
+                    }
+                    String replacement = anonymizeLiteral(values, fieldStart, literalEnd, rule, table, column);
+                    if (replacement != null) {
+                        if (out == null) {
+                            out = new StringBuilder(values.length() + 64);
+                        }
+                        out.append(values, copied, fieldStart).append(replacement);
+                        copied = literalEnd;
+                    }
+                }
+                column++;
+                i = fieldEnd + 1;
+                if (fieldEnd >= n || values.charAt(fieldEnd) == ')') {
+                    break;
+                }
+            }
+            if (column != table.getColumnCount()) {
+                throw new IOException("INSERT row for " + table.getName() + " has " + column + " values, expected "
+                        + table.getColumnCount());
+            }
+        }
+
+        if (out == null) {
+            return values;
+        }
+        return out.append(values, copied, n).toString();
+    }
+
+    /**
+     * 改写 COPY 块中的若干数据行（制表符分隔的文本格式）
+     *
+     * @param lines 以换行符结尾的数据行
+     * @param table 表信息
+     * @return 改写后的数据行
+     * @throws IOException 数据行的字段数与列数不一致
+     */
+    String rewriteCopy(String lines, DumpTable table) throws IOException {
+        StringBuilder out = new StringBuilder(lines.length() + 64);
+        int lineStart = 0;
+        while (lineStart < lines.length()) {
+            int newline = lines.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? lines.length() : newline;
+            String[] fields = lines.substring(lineStart, lineEnd).split("\t", -1);
+            if (fields.length != table.getColumnCount()) {
+                // 列数不一致时无法确定列位置
+                throw new IOException("COPY row for " + table.getName() + " has " + fields.length
+                        + " fields, expected " + table.getColumnCount());
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    out.append('\t');
+                }
+                AnonymizationRule rule = table.getRule(i);
+                if (rule == null || fields[i].equals("\\N")) {
+                    out.append(fields[i]);
+                } else {
+                    appendCopyEscaped(out, rule.anonymize(unescapeCopy(fields[i])));
+                }
+            }
+            if (newline >= 0) {
+                out.append('\n');
+            }
+            lineStart = lineEnd + 1;
+        }
+        return out.toString();
+    }
+
+    /**
+     * 对一个字面量应用规则，返回新的字面量；NULL 返回null表示保持不变
+     *
+     * @throws IOException 无法识别的字面量，异常信息中不包含字面量的内容
+     */
+    private String anonymizeLiteral(String text, int start, int end, AnonymizationRule rule, DumpTable table,
+                                    int column) throws IOException {
+        if (end - start == 4 && text.regionMatches(true, start, "NULL", 0, 4)) {
+            return null;
+        }
+        if (start >= end) {
+            throw new IOException("Empty value in column " + (column + 1) + " of an INSERT row for " + table.getName());
+        }
+        char first = text.charAt(start);
+        if (first == '\'' && end - start >= 2 && text.charAt(end - 1) == '\'') {
+            return quote(rule.anonymize(unquote(text, start + 1, end - 1)));
+        }
+        if (Character.isDigit(first) || first == '-' || first == '+' || first == '.') {
+            // 数值列（如金额）也以字符串字面量写回，由数据库隐式转换
+            return quote(rule.anonymize(text.substring(start, end)));
+        }
+        throw new IOException("Unsupported literal in column " + (column + 1) + " of an INSERT row for "
+                + table.getName() + ", only quoted strings, numbers and NULL can be anonymized");
+    }
+
+    /**
+     * 找到字段的结尾：顶层的逗号或右括号
+     */
+    private int scanField(String text, int i) {
+        int depth = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '\'') {
+                i = skipQuoted(text, i);
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                return i;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    /**
+     * @return 结束引号之后的位置
+     */
+    private int skipQuoted(String text, int i) {
+        int n = text.length();
+        i++;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '\\' && backslashEscapes) {
+                i += 2;
+            } else if (c == '\'') {
+                if (i + 1 < n && text.charAt(i + 1) == '\'') {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private String unquote(String text, int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && backslashEscapes && i + 1 < end) {
+                char next = text.charAt(++i);
+                switch (next) {
+                    case '0': value.append('\0'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'Z': value.append('\u001A'); break;
+                    default: value.append(next); break;
+                }
+            } else if (c == '\'' && i + 1 < end && text.charAt(i + 1) == '\'') {
+                value.append('\'');
+                i++;
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    private String quote(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2);
+        appendQuoted(literal, value, backslashEscapes);
+        return literal.toString();
+    }
+
+    /**
+     * 追加一个字符串字面量
+     *
+     * @param literal 输出
+     * @param value 字符串值
+     * @param backslashEscapes 为true时按MySQL默认的 sql_mode 用反斜杠转义引号、反斜杠和控制字符，
+     *                         否则按标准SQL只把单引号加倍
+     */
+    static void appendQuoted(StringBuilder literal, String value, boolean backslashEscapes) {
+        literal.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!backslashEscapes) {
+                if (c == '\'') {
+                    literal.append('\'');
+                }
+                literal.append(c);
+                continue;
+            }
+            switch (c) {
+                case '\0': literal.append("\\0"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\u001A': literal.append("\\Z"); break;
+                case '\'': literal.append("\\'"); break;
+                case '\\': literal.append("\\\\"); break;
+                default: literal.append(c); break;
+            }
+        }
+        literal.append('\'');
+    }
+
+    private static String unescapeCopy(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\' || i + 1 >= field.length()) {
+                value.append(c);
+                continue;
+            }
+            char next = field.charAt(++i);
+            switch (next) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'v': value.append('\u000B'); break;
+                default: value.append(next); break;
+            }
+        }
+        return value.toString();
+    }
+
+    private static void appendCopyEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default: out.append(c); break;
+            }
+        }
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,476 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+import com.anonymizer.app.anonymizer.RuleResolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增量扫描 mysqldump / pg_dump 生成的SQL文件，把映射窗口切分为原样输出和需要脱敏的片段
+ *
+ * 扫描只做轻量的识别工作：按行查找 CREATE TABLE（记录列顺序）、INSERT 语句（按引号状态找到语句结尾）
+ * 和 COPY ... FROM stdin 块，值的解析和脱敏由 {@link DumpRewriter} 在工作线程中完成。
+ * 扫描状态（是否在 COPY 块中、已知的表结构）在窗口之间保留。
+ *
+ * 配置的表中无法识别的语句（语句头过长或不是 VALUES 形式的 INSERT、既没有列名列表也没有 CREATE TABLE
+ * 的 INSERT、没有列名列表的 COPY、转储中缺少配置的列）会抛出异常使运行失败，而不是把未脱敏的数据原样输出。
+ */
+class DumpScanner {
+    private static final byte[] INSERT_INTO = "INSERT INTO ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CREATE_TABLE = "CREATE TABLE ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COPY = "COPY ".getBytes(StandardCharsets.US_ASCII);
+    /** 解析 INSERT 语句头（表名和列名列表）时最多读取的字节数 */
+    private static final int MAX_HEADER_LENGTH = 64 * 1024;
+    private static final Set<String> CONSTRAINT_KEYWORDS = new HashSet<>(Arrays.asList(
+            "PRIMARY", "KEY", "UNIQUE", "INDEX", "CONSTRAINT", "FOREIGN", "CHECK", "FULLTEXT", "SPATIAL", "EXCLUDE"));
+
+    private final boolean backslashEscapes;
+    private final RuleResolver ruleResolver;
+    /** 配置的表名，键为小写 */
+    private final Map<String, String> configuredTables = new HashMap<>();
+    /** CREATE TABLE 中的列顺序，键为小写表名 */
+    private final Map<String, String[]> createdTables = new HashMap<>();
+    private final Map<String, DumpTable> resolvedTables = new HashMap<>();
+
+    private boolean inCopy;
+    private DumpTable copyTable;
+    private int consumed;
+
+    /**
+     * @param backslashEscapes 字符串字面量是否使用反斜杠转义（MySQL）
+     * @param ruleResolver 规则解析器
+     * @param tables 配置的表名
+     */
+    DumpScanner(boolean backslashEscapes, RuleResolver ruleResolver, List<String> tables) {
+        this.backslashEscapes = backslashEscapes;
+        this.ruleResolver = ruleResolver;
+        for (String table : tables) {
+            configuredTables.put(table.toLowerCase(Locale.ROOT), table);
+        }
+    }
+
+    /**
+     * 扫描窗口，返回覆盖 [0, {@link #getConsumed()}) 的片段
+     *
+     * 窗口末尾未结束的多行语句不会被消费，调用方应从 getConsumed() 处开始映射下一个窗口。
+     *
+     * @param window 映射窗口
+     * @param limit 窗口中可用的字节数（以完整的行结束）
+     * @param endOfInput 是否为最后一个窗口
+     * @return 片段列表
+     * @throws IOException 配置的表中有无法识别的语句
+     */
+    List<DumpSegment> scan(ByteBuffer window, int limit, boolean endOfInput) throws IOException {
+        List<DumpSegment> segments = new ArrayList<>();
+        int pos = 0;
+        while (pos < limit) {
+            int lineEnd = lineEnd(window, pos, limit);
+            if (inCopy) {
+                if (isCopyTerminator(window, pos, lineEnd)) {
+                    inCopy = false;
+                    add(segments, DumpSegment.Kind.PASS, pos, lineEnd, null, 0);
+                } else {
+                    add(segments, copyTable != null ? DumpSegment.Kind.COPY : DumpSegment.Kind.PASS, pos, lineEnd,
+                            copyTable, 0);
+                }
+                pos = lineEnd;
+            } else if (startsWith(window, pos, lineEnd, INSERT_INTO)) {
+                int end = findStatementEnd(window, pos, limit);
+                if (end < 0) {
+                    if (!endOfInput) {
+                        break;
+                    }
+                    end = limit;
+                }
+                String header = latin1(window, pos, Math.min(end, pos + MAX_HEADER_LENGTH));
+                int headerLength = findValuesKeyword(header);
+                DumpTable table = headerLength < 0 ? checkUnparsedInsert(header)
+                        : resolveInsertTable(header, headerLength);
+                add(segments, table != null ? DumpSegment.Kind.INSERT : DumpSegment.Kind.PASS, pos, end, table,
+                        headerLength);
+                pos = end;
+            } else if (startsWith(window, pos, lineEnd, CREATE_TABLE)) {
+                int end = findDdlEnd(window, pos, limit);
+                if (end < 0) {
+                    if (!endOfInput) {
+                        break;
+                    }
+                    end = limit;
+                }
+                parseCreateTable(utf8(window, pos, end));
+                add(segments, DumpSegment.Kind.PASS, pos, end, null, 0);
+                pos = end;
+            } else {
+                if (startsWith(window, pos, lineEnd, COPY)) {
+                    String line = utf8(window, pos, lineEnd).trim();
+                    if (line.toUpperCase(Locale.ROOT).endsWith("FROM STDIN;")) {
+                        inCopy = true;
+                        copyTable = resolveCopyTable(line);
+                    }
+                }
+                add(segments, DumpSegment.Kind.PASS, pos, lineEnd, null, 0);
+                pos = lineEnd;
+            }
+        }
+        consumed = pos;
+        return segments;
+    }
+
+    /**
+     * 获取上一次扫描消费的字节数
+     *
+     * @return 字节数
+     */
+    int getConsumed() {
+        return consumed;
+    }
+
+    private static void add(List<DumpSegment> segments, DumpSegment.Kind kind, int start, int end, DumpTable table,
+                            int headerLength) {
+        if (!segments.isEmpty()) {
+            DumpSegment last = segments.get(segments.size() - 1);
+            // 相邻的原样输出片段和同一个表的 COPY 数据行合并为一个片段
+            if (last.kind == kind && kind != DumpSegment.Kind.INSERT && last.table == table && last.end == start) {
+                last.end = end;
+                return;
+            }
+        }
+        segments.add(new DumpSegment(kind, start, end, table, headerLength));
+    }
+
+    /**
+     * 查找 INSERT 语句的结尾：引号外的分号所在行的行尾
+     *
+     * @return 语句结尾之后的位置，窗口内找不到时返回-1
+     */
+    private int findStatementEnd(ByteBuffer window, int pos, int limit) {
+        boolean inQuote = false;
+        for (int i = pos; i < limit; i++) {
+            byte b = window.get(i);
+            if (inQuote) {
+                if (b == '\\' && backslashEscapes) {
+                    i++;
+                } else if (b == '\'') {
+                    inQuote = false;
+                }
+            } else if (b == '\'') {
+                inQuote = true;
+            } else if (b == ';') {
+                return lineEnd(window, i, limit);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 查找 CREATE TABLE 语句的结尾：第一个以分号结尾的行
+     *
+     * @return 语句结尾之后的位置，窗口内找不到时返回-1
+     */
+    private static int findDdlEnd(ByteBuffer window, int pos, int limit) {
+        while (pos < limit) {
+            int lineEnd = lineEnd(window, pos, limit);
+            int last = lineEnd - 1;
+            while (last >= pos && isWhitespace(window.get(last))) {
+                last--;
+            }
+            if (last >= pos && window.get(last) == ';') {
+                return lineEnd;
+            }
+            if (lineEnd == limit && window.get(limit - 1) != '\n') {
+                return -1;
+            }
+            pos = lineEnd;
+        }
+        return -1;
+    }
+
+    /**
+     * 在 INSERT 语句头中查找 VALUES 关键字
+     *
+     * @param header 以 ISO-8859-1 解码的语句开头，字符位置与字节位置一致
+     * @return VALUES 之后的位置，找不到时返回-1
+     */
+    private static int findValuesKeyword(String header) {
+        char quote = 0;
+        int depth = 0;
+        for (int i = INSERT_INTO.length; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '`' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && header.regionMatches(true, i, "VALUES", 0, 6)
+                    && Character.isWhitespace(header.charAt(i - 1))
+                    && (i + 6 == header.length() || !Character.isLetterOrDigit(header.charAt(i + 6)))) {
+                return i + 6;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 找不到 VALUES 关键字的 INSERT 语句（语句头超过 MAX_HEADER_LENGTH，或 INSERT ... SELECT 等形式）：
+     * 未配置的表原样输出，配置的表无法脱敏，抛出异常
+     *
+     * @return null
+     */
+    private DumpTable checkUnparsedInsert(String header) throws IOException {
+        char quote = 0;
+        int end = INSERT_INTO.length;
+        while (end < header.length()) {
+            char c = header.charAt(end);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '`' || c == '"') {
+                quote = c;
+            } else if (c == '(' || Character.isWhitespace(c)) {
+                break;
+            }
+            end++;
+        }
+        String tableName = normalizeName(new String(header.substring(INSERT_INTO.length, end)
+                .getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8));
+        if (configuredTables.containsKey(tableName)) {
+            throw new IOException("Cannot find VALUES in the first " + MAX_HEADER_LENGTH
+                    + " bytes of an INSERT into " + tableName + ", its rows cannot be anonymized");
+        }
+        return null;
+    }
+
+    private DumpTable resolveInsertTable(String header, int headerLength) throws IOException {
+        // 重新按UTF-8解码语句头，以便正确读取非ASCII的表名和列名
+        String text = new String(header.substring(INSERT_INTO.length, headerLength - 6)
+                .getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8).trim();
+        int paren = text.indexOf('(');
+        String tableName = normalizeName(paren < 0 ? text : text.substring(0, paren));
+        if (!configuredTables.containsKey(tableName)) {
+            return null;
+        }
+
+        String[] columns;
+        if (paren >= 0) {
+            columns = splitNames(text.substring(paren + 1, text.lastIndexOf(')')));
+        } else {
+            columns = createdTables.get(tableName);
+            if (columns == null) {
+                throw new IOException("INSERT into " + tableName
+                        + " has no column list and no CREATE TABLE precedes it, its rows cannot be anonymized");
+            }
+        }
+        return resolveTable(tableName, columns);
+    }
+
+    private DumpTable resolveCopyTable(String line) throws IOException {
+        // COPY public.customers (id, name, mobile) FROM stdin;
+        int paren = line.indexOf('(');
+        int close = line.lastIndexOf(')');
+        String name = paren >= 0 ? line.substring(COPY.length, paren)
+                : line.substring(COPY.length, line.length() - "FROM stdin;".length());
+        String tableName = normalizeName(name);
+        if (!configuredTables.containsKey(tableName)) {
+            return null;
+        }
+        if (paren < 0 || close < paren) {
+            throw new IOException("COPY into " + tableName + " has no column list, its rows cannot be anonymized");
+        }
+        return resolveTable(tableName, splitNames(line.substring(paren + 1, close)));
+    }
+
+    /**
+     * 按列顺序查找每列的脱敏规则，同一个表和列顺序的结果会被缓存
+     *
+     * @return 表信息，没有配置需要脱敏的列时返回null
+     * @throws IOException 配置的列不在列名列表中
+     */
+    private DumpTable resolveTable(String tableName, String[] columns) throws IOException {
+        String key = tableName + "|" + String.join(",", columns);
+        if (resolvedTables.containsKey(key)) {
+            return resolvedTables.get(key);
+        }
+
+        String configuredName = configuredTables.get(tableName);
+        Map<String, AnonymizationRule> columnRules = ruleResolver.getColumnRules(configuredName);
+        AnonymizationRule[] rules = new AnonymizationRule[columns.length];
+        for (Map.Entry<String, AnonymizationRule> entry : columnRules.entrySet()) {
+            boolean found = false;
+            for (int i = 0; i < columns.length; i++) {
+                if (entry.getKey().equalsIgnoreCase(columns[i])) {
+                    rules[i] = entry.getValue();
+                    found = true;
+                }
+            }
+            if (!found) {
+                throw new IOException("Column " + entry.getKey() + " of " + configuredName
+                        + " is not in the dump's column list " + Arrays.toString(columns));
+            }
+        }
+
+        DumpTable table = columnRules.isEmpty() ? null : new DumpTable(configuredName, rules);
+        resolvedTables.put(key, table);
+        return table;
+    }
+
+    /**
+     * 从 CREATE TABLE 语句中记录列顺序，供没有列名列表的 INSERT 语句使用
+     */
+    private void parseCreateTable(String statement) {
+        int paren = statement.indexOf('(');
+        int close = statement.lastIndexOf(')');
+        if (paren < 0 || close < paren) {
+            return;
+        }
+        String name = statement.substring(CREATE_TABLE.length, paren).trim();
+        if (name.toUpperCase(Locale.ROOT).startsWith("IF NOT EXISTS ")) {
+            name = name.substring("IF NOT EXISTS ".length());
+        }
+        String tableName = normalizeName(name);
+        if (!configuredTables.containsKey(tableName)) {
+            return;
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (String item : splitTopLevel(statement.substring(paren + 1, close))) {
+            String definition = item.trim();
+            if (definition.isEmpty()) {
+                continue;
+            }
+            String first = definition.split("\\s+", 2)[0];
+            if (CONSTRAINT_KEYWORDS.contains(first.toUpperCase(Locale.ROOT))) {
+                continue;
+            }
+            columns.add(unquote(first));
+        }
+        createdTables.put(tableName, columns.toArray(new String[0]));
+    }
+
+    /**
+     * 按顶层逗号拆分，忽略括号和引号中的逗号
+     */
+    private static List<String> splitTopLevel(String text) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                items.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        items.add(text.substring(start));
+        return items;
+    }
+
+    private static String[] splitNames(String list) {
+        List<String> items = splitTopLevel(list);
+        String[] names = new String[items.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = unquote(items.get(i).trim());
+        }
+        return names;
+    }
+
+    /**
+     * 去掉引号和模式名，转为小写，例如 public."Customers" 变为 customers
+     */
+    private static String normalizeName(String name) {
+        String trimmed = name.trim();
+        int dot = trimmed.lastIndexOf('.');
+        if (dot >= 0) {
+            trimmed = trimmed.substring(dot + 1);
+        }
+        return unquote(trimmed).toLowerCase(Locale.ROOT);
+    }
+
+    private static String unquote(String name) {
+        if (name.length() >= 2) {
+            char first = name.charAt(0);
+            if ((first == '`' || first == '"') && name.charAt(name.length() - 1) == first) {
+                return name.substring(1, name.length() - 1);
+            }
+        }
+        return name;
+    }
+
+    private static boolean isCopyTerminator(ByteBuffer window, int pos, int lineEnd) {
+        int end = lineEnd;
+        while (end > pos && (window.get(end - 1) == '\n' || window.get(end - 1) == '\r')) {
+            end--;
+        }
+        return end - pos == 2 && window.get(pos) == '\\' && window.get(pos + 1) == '.';
+    }
+
+    private static boolean startsWith(ByteBuffer window, int pos, int lineEnd, byte[] prefix) {
+        if (lineEnd - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (window.get(pos + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 换行符之后的位置，没有换行符时返回 limit
+     */
+    private static int lineEnd(ByteBuffer window, int pos, int limit) {
+        for (int i = pos; i < limit; i++) {
+            if (window.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static String latin1(ByteBuffer window, int start, int end) {
+        return new String(bytes(window, start, end), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String utf8(ByteBuffer window, int start, int end) {
+        return new String(bytes(window, start, end), StandardCharsets.UTF_8);
+    }
+
+    static byte[] bytes(ByteBuffer window, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = window.duplicate();
+        view.position(start).limit(end);
+        view.get(bytes);
+        return bytes;
+    }
+}
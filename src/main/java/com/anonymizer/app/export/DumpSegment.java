@@ -0,0 +1,34 @@
+package com.anonymizer.app.export;
+
+/**
+ * 转储文件映射窗口中的一段连续字节及其处理方式
+ */
+class DumpSegment {
+    enum Kind {
+        /** 原样输出 */
+        PASS,
+        /** 一条需要脱敏的 INSERT 语句 */
+        INSERT,
+        /** COPY 块中需要脱敏的若干数据行 */
+        COPY
+    }
+
+    final Kind kind;
+    final int start;
+    int end;
+    final DumpTable table;
+    /** INSERT 语句中 VALUES 关键字之前（含）的字节数，这部分原样输出 */
+    final int headerLength;
+
+    DumpSegment(Kind kind, int start, int end, DumpTable table, int headerLength) {
+        this.kind = kind;
+        this.start = start;
+        this.end = end;
+        this.table = table;
+        this.headerLength = headerLength;
+    }
+
+    int length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,38 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+
+/**
+ * 转储文件中一个需要脱敏的表：按列在 INSERT 或 COPY 中的位置排列的脱敏规则
+ */
+class DumpTable {
+    private final String name;
+    private final AnonymizationRule[] rules;
+
+    /**
+     * @param name 表名
+     * @param rules 每列的脱敏规则，不需要脱敏的列为null
+     */
+    DumpTable(String name, AnonymizationRule[] rules) {
+        this.name = name;
+        this.rules = rules;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getColumnCount() {
+        return rules.length;
+    }
+
+    /**
+     * 获取指定位置的列的脱敏规则
+     *
+     * @param column 列位置（从0开始）
+     * @return 脱敏规则，不需要脱敏或超出列数时为null
+     */
+    AnonymizationRule getRule(int column) {
+        return column < rules.length ? rules[column] : null;
+    }
+}
@@ -0,0 +1,39 @@
+package com.anonymizer.app.export;
+
+/**
+ * 导出文件的格式
+ */
+public enum ExportFormat {
+    /** 多行 INSERT 语句 */
+    SQL(".sql"),
+    /** 带表头的CSV（RFC 4180） */
+    CSV(".csv");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * 从字符串解析导出格式
+     *
+     * @param format 导出格式字符串
+     * @return 导出格式枚举，无法解析时默认为SQL
+     */
+    public static ExportFormat fromString(String format) {
+        if (format == null || format.isEmpty()) {
+            return SQL;
+        }
+
+        try {
+            return valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return SQL;
+        }
+    }
+}
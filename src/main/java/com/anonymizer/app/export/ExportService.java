@@ -0,0 +1,202 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+import com.anonymizer.app.anonymizer.RandomSources;
+import com.anonymizer.app.anonymizer.RuleResolver;
+import com.anonymizer.app.config.ConfigLoader;
+import com.anonymizer.app.db.ConnectionFactory;
+import com.anonymizer.app.db.DatabaseDialect;
+import com.anonymizer.app.db.DatabaseType;
+import com.anonymizer.app.db.TableResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 导出模式：从源库流式读取每个表，脱敏后写成压缩的转储文件，源库只读不写
+ *
+ * 每个表边读边写，内存中只保留当前一行和固定大小的缓冲区；多个表可以按 parallel.workers 同时导出。
+ */
+public class ExportService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    private final ConfigLoader configLoader;
+    private final ConnectionFactory connectionFactory;
+    private final DatabaseDialect dialect;
+    private final RuleResolver ruleResolver;
+    private final Long randomSeed;
+
+    public ExportService(ConfigLoader configLoader, Properties config) {
+        this.configLoader = configLoader;
+        this.connectionFactory = new ConnectionFactory(config, "database");
+        this.dialect = connectionFactory.getDialect();
+        this.ruleResolver = new RuleResolver(configLoader);
+        this.randomSeed = configLoader.getRandomSeed();
+    }
+
+    /**
+     * 导出所有配置的表，单个表失败不影响其他表
+     */
+    public void exportAllTables() throws SQLException {
+        List<String> tables = configLoader.getTables();
+        Path directory = Paths.get(configLoader.getExportDirectory());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SQLException("Cannot create export directory " + directory, e);
+        }
+
+        int workers = Math.min(configLoader.getParallelWorkers(), Math.max(1, tables.size()));
+        long startTime = System.currentTimeMillis();
+        logger.info("Starting export of {} tables to {} as {} ({}) with {} worker(s)", tables.size(), directory,
+                configLoader.getExportFormat(), configLoader.getExportCompression(), workers);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "export-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<TableResult> results = new ArrayList<>();
+        try {
+            List<Future<TableResult>> futures = new ArrayList<>();
+            for (String tableName : tables) {
+                futures.add(executor.submit(() -> exportTable(directory, tableName)));
+            }
+            for (Future<TableResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for export workers", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Export worker failed unexpectedly", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            connectionFactory.close();
+        }
+
+        TableResult.logSummary(logger, results, System.currentTimeMillis() - startTime);
+        ruleResolver.logCacheStats();
+        TableResult.throwIfFailed(results);
+    }
+
+    /**
+     * 导出一个表，捕获异常并转换为处理结果
+     *
+     * @param directory 输出目录
+     * @param tableName 表名
+     * @return 处理结果
+     */
+    private TableResult exportTable(Path directory, String tableName) {
+        long startTime = System.currentTimeMillis();
+        if (randomSeed != null) {
+            RandomSources.bind(RandomSources.seeded(randomSeed, tableName));
+        }
+        try (Connection conn = connectionFactory.open()) {
+            conn.setReadOnly(true);
+            long rows = exportRows(conn, directory, tableName);
+            conn.commit();
+            return TableResult.success(tableName, rows, System.currentTimeMillis() - startTime);
+        } catch (SQLException | IOException | RuntimeException e) {
+            logger.error("Error exporting table {}: {}", tableName, e.getMessage());
+            return TableResult.failure(tableName, System.currentTimeMillis() - startTime, e);
+        } finally {
+            RandomSources.unbind();
+        }
+    }
+
+    private long exportRows(Connection conn, Path directory, String tableName) throws SQLException, IOException {
+        Map<String, AnonymizationRule> columnRules = ruleResolver.getColumnRules(tableName);
+
+        try (PreparedStatement stmt = dialect.prepareStreamingQuery(conn, dialect.getSelectAllQuery(tableName),
+                configLoader.getFetchSize());
+             ResultSet rs = stmt.executeQuery()) {
+            // 按结果集的列顺序找到每列的脱敏规则，不需要脱敏的列保持原值
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            String[] columns = new String[columnCount];
+            AnonymizationRule[] rules = new AnonymizationRule[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columns[i] = metaData.getColumnName(i + 1);
+                for (Map.Entry<String, AnonymizationRule> entry : columnRules.entrySet()) {
+                    if (entry.getKey().equalsIgnoreCase(columns[i])) {
+                        rules[i] = entry.getValue();
+                    }
+                }
+            }
+
+            int[] types = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                types[i] = metaData.getColumnType(i + 1);
+            }
+
+            long rows = 0;
+            Object[] row = new Object[columnCount];
+            DumpFileWriter writer = new DumpFileWriter(directory, tableName, columns, configLoader.getExportFormat(),
+                    configLoader.getExportCompression(), configLoader.getExportMaxFileBytes(),
+                    configLoader.getExportBufferSize(), configLoader.getExportInsertBatchSize(),
+                    connectionFactory.getDatabaseType() == DatabaseType.MYSQL);
+            try {
+                while (rs.next()) {
+                    for (int i = 0; i < columnCount; i++) {
+                        if (rules[i] != null) {
+                            String value = rs.getString(i + 1);
+                            row[i] = value != null ? rules[i].anonymize(value) : null;
+                        } else {
+                            row[i] = readValue(rs, i + 1, types[i]);
+                        }
+                    }
+                    writer.write(row);
+                    rows++;
+                }
+            } finally {
+                writer.close();
+            }
+            logger.info("Exported table {}: {} rows in {} file(s)", tableName, rows, writer.getPartCount());
+            return rows;
+        }
+    }
+
+    /**
+     * 按列类型读取一列：大对象和XML读取为字符串或字节数组（getObject 返回的 Clob、Blob 只是定位符），
+     * 其他类型使用驱动的默认映射
+     */
+    private static Object readValue(ResultSet rs, int column, int sqlType) throws SQLException {
+        switch (sqlType) {
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.SQLXML:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+                return rs.getString(column);
+            case Types.BLOB:
+            case Types.LONGVARBINARY:
+            case Types.VARBINARY:
+            case Types.BINARY:
+                return rs.getBytes(column);
+            default:
+                return rs.getObject(column);
+        }
+    }
+}
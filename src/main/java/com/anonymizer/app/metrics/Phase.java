@@ -0,0 +1,26 @@
+package com.anonymizer.app.metrics;
+
+import java.util.Locale;
+
+/**
+ * 脱敏过程中分别计时的阶段
+ */
+public enum Phase {
+    /** 从结果集读取一行（包括游标前进和取列值），按行计时 */
+    READ,
+    /** 对一行的所有列应用脱敏规则，按行计时 */
+    TRANSFORM,
+    /** 执行一次批处理或集合更新，按批计时 */
+    WRITE,
+    /** 一次提交，按次计时 */
+    COMMIT;
+
+    /**
+     * 获取报告和JMX中使用的名称
+     *
+     * @return 小写名称
+     */
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
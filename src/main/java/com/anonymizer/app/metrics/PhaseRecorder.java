@@ -0,0 +1,53 @@
+package com.anonymizer.app.metrics;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * 一个线程按行记录阶段耗时时使用的本地直方图
+ *
+ * 表的直方图由该表的所有工作单元和流水线线程共享，每行记录一次会让这些线程争用同一组计数。
+ * 记录器只在创建它的线程中使用，记录时不需要同步；每隔一批行和线程结束时调用 {@link #flush()}
+ * 合并到表的直方图中，JMX 和报告中的值最多落后一批。
+ */
+public final class PhaseRecorder {
+    private static final Phase[] PHASES = Phase.values();
+
+    private final TableMetrics table;
+    private final Histogram[] histograms = new Histogram[PHASES.length];
+    private final long[] totalNanos = new long[PHASES.length];
+
+    PhaseRecorder(TableMetrics table) {
+        this.table = table;
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param phase 阶段
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(Phase phase, long nanos) {
+        int index = phase.ordinal();
+        Histogram histogram = histograms[index];
+        if (histogram == null) {
+            histogram = new Histogram(3);
+            histograms[index] = histogram;
+        }
+        histogram.recordValue(Math.max(0, nanos));
+        totalNanos[index] += nanos;
+    }
+
+    /**
+     * 把记录的耗时合并到表的直方图中并清空
+     */
+    public void flush() {
+        for (int i = 0; i < PHASES.length; i++) {
+            Histogram histogram = histograms[i];
+            if (histogram != null && histogram.getTotalCount() > 0) {
+                table.merge(PHASES[i], histogram, totalNanos[i]);
+                histogram.reset();
+                totalNanos[i] = 0;
+            }
+        }
+    }
+}
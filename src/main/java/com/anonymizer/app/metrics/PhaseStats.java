@@ -0,0 +1,62 @@
+package com.anonymizer.app.metrics;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * 一个阶段耗时的快照，时间单位为微秒（总耗时为毫秒）
+ *
+ * 通过JMX读取时映射为 CompositeData。
+ */
+public final class PhaseStats {
+    private final long count;
+    private final double totalMillis;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    PhaseStats(Histogram histogram, long totalNanos) {
+        this.count = histogram.getTotalCount();
+        this.totalMillis = totalNanos / 1e6;
+        this.meanMicros = count == 0 ? 0 : histogram.getMean() / 1e3;
+        this.p50Micros = histogram.getValueAtPercentile(50) / 1e3;
+        this.p90Micros = histogram.getValueAtPercentile(90) / 1e3;
+        this.p99Micros = histogram.getValueAtPercentile(99) / 1e3;
+        this.p999Micros = histogram.getValueAtPercentile(99.9) / 1e3;
+        this.maxMicros = histogram.getMaxValue() / 1e3;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    public double getP90Micros() {
+        return p90Micros;
+    }
+
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+}
@@ -0,0 +1,231 @@
+package com.anonymizer.app.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 一次脱敏运行的指标，按表汇总
+ *
+ * 启用JMX时每个表的 {@link TableMetrics} 在首次使用时注册到平台 MBeanServer，{@link #close()} 时注销。
+ * 运行结束后可以写出JSON报告，并在日志中输出每个表各阶段耗时的占比，用于判断瓶颈在数据库还是脱敏规则。
+ */
+public final class RunMetrics implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RunMetrics.class);
+    private static final String DOMAIN = "com.anonymizer.app";
+
+    private final Map<String, TableMetrics> tables = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<>());
+    private final boolean jmx;
+    private final Instant startTime = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param jmx 是否把各表的指标注册为MBean
+     */
+    public RunMetrics(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /**
+     * 获取表的指标，不存在时创建（并注册MBean）
+     *
+     * @param tableName 表名
+     * @return 表的指标
+     */
+    public TableMetrics table(String tableName) {
+        return tables.computeIfAbsent(tableName, name -> {
+            TableMetrics metrics = new TableMetrics(name);
+            if (jmx) {
+                register(metrics);
+            }
+            return metrics;
+        });
+    }
+
+    private void register(TableMetrics metrics) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=TableMetrics,table="
+                    + ObjectName.quote(metrics.getTableName()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metrics, objectName);
+            registered.add(objectName);
+        } catch (JMException e) {
+            logger.warn("Cannot register metrics MBean for table {}: {}", metrics.getTableName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 在日志中输出每个表的吞吐量和各阶段耗时占比
+     */
+    public void logSummary() {
+        for (TableMetrics metrics : snapshot()) {
+            double[] millis = new double[Phase.values().length];
+            double total = 0;
+            for (Phase phase : Phase.values()) {
+                millis[phase.ordinal()] = metrics.getStats(phase).getTotalMillis();
+                total += millis[phase.ordinal()];
+            }
+            StringBuilder shares = new StringBuilder();
+            for (Phase phase : Phase.values()) {
+                if (shares.length() > 0) {
+                    shares.append(", ");
+                }
+                shares.append(phase.getName()).append(' ').append(String.format(Locale.ROOT, "%.0f%%",
+                        total == 0 ? 0 : millis[phase.ordinal()] * 100 / total));
+            }
+            logger.info("Metrics {}: {} rows/s, {} bytes read, {}", metrics.getTableName(),
+                    String.format(Locale.ROOT, "%.0f", metrics.getRowsPerSecond()), metrics.getBytesRead(), shares);
+        }
+    }
+
+    /**
+     * 写出JSON格式的运行报告，先写临时文件再替换，不会留下不完整的报告
+     *
+     * @param file 报告文件
+     */
+    public void writeReport(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Metrics report written to {}", absolute);
+    }
+
+    /**
+     * 生成JSON格式的报告
+     *
+     * @return JSON文本
+     */
+    public String toJson() {
+        List<TableMetrics> snapshot = snapshot();
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        long totalRows = 0;
+        long totalBytes = 0;
+        for (TableMetrics metrics : snapshot) {
+            totalRows += metrics.getRows();
+            totalBytes += metrics.getBytesRead();
+        }
+
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        json.append("  \"startTime\": ").append(quote(startTime.toString())).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(elapsedMillis).append(",\n");
+        json.append("  \"rows\": ").append(totalRows).append(",\n");
+        json.append("  \"bytesRead\": ").append(totalBytes).append(",\n");
+        json.append("  \"rowsPerSecond\": ").append(number(elapsedMillis == 0 ? 0 : totalRows * 1000.0 / elapsedMillis))
+            .append(",\n");
+        json.append("  \"tables\": [");
+        for (int t = 0; t < snapshot.size(); t++) {
+            TableMetrics metrics = snapshot.get(t);
+            json.append(t == 0 ? "\n" : ",\n");
+            json.append("    {\n");
+            json.append("      \"table\": ").append(quote(metrics.getTableName())).append(",\n");
+            json.append("      \"rows\": ").append(metrics.getRows()).append(",\n");
+            json.append("      \"bytesRead\": ").append(metrics.getBytesRead()).append(",\n");
+            json.append("      \"elapsedMillis\": ").append(metrics.getElapsedMillis()).append(",\n");
+            json.append("      \"rowsPerSecond\": ").append(number(metrics.getRowsPerSecond())).append(",\n");
+            json.append("      \"phases\": {");
+            Phase[] phases = Phase.values();
+            for (int p = 0; p < phases.length; p++) {
+                PhaseStats stats = metrics.getStats(phases[p]);
+                json.append(p == 0 ? "\n" : ",\n");
+                json.append("        ").append(quote(phases[p].getName())).append(": {")
+                    .append("\"count\": ").append(stats.getCount())
+                    .append(", \"totalMillis\": ").append(number(stats.getTotalMillis()))
+                    .append(", \"meanMicros\": ").append(number(stats.getMeanMicros()))
+                    .append(", \"p50Micros\": ").append(number(stats.getP50Micros()))
+                    .append(", \"p90Micros\": ").append(number(stats.getP90Micros()))
+                    .append(", \"p99Micros\": ").append(number(stats.getP99Micros()))
+                    .append(", \"p999Micros\": ").append(number(stats.getP999Micros()))
+                    .append(", \"maxMicros\": ").append(number(stats.getMaxMicros()))
+                    .append('}');
+            }
+            json.append("\n      }\n    }");
+        }
+        json.append(snapshot.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * 注销所有已注册的MBean
+     */
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registered) {
+            for (ObjectName objectName : registered) {
+                try {
+                    server.unregisterMBean(objectName);
+                } catch (JMException e) {
+                    logger.debug("Cannot unregister {}: {}", objectName, e.getMessage());
+                }
+            }
+            registered.clear();
+        }
+    }
+
+    private List<TableMetrics> snapshot() {
+        synchronized (tables) {
+            return new ArrayList<>(tables.values());
+        }
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,195 @@
+package com.anonymizer.app.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个表的运行指标：各阶段耗时的直方图、行数和读取字节数
+ *
+ * 同一个表的多个工作单元在不同线程中并发记录。直方图以纳秒为单位、保留3位有效数字并自动扩展范围，
+ * 记录操作无锁；计数器使用 {@link LongAdder}，避免多线程更新同一个缓存行。按批和按次的耗时直接记录，
+ * 按行的耗时先记录在各线程自己的 {@link PhaseRecorder} 中，再成批合并。
+ */
+public final class TableMetrics implements TableMetricsMXBean {
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String tableName;
+    private final Histogram[] histograms = new Histogram[PHASES.length];
+    private final LongAdder[] totalNanos = new LongAdder[PHASES.length];
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final AtomicInteger activeUnits = new AtomicInteger();
+    private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEndNanos = new AtomicLong();
+
+    TableMetrics(String tableName) {
+        this.tableName = tableName;
+        for (int i = 0; i < PHASES.length; i++) {
+            histograms[i] = new ConcurrentHistogram(3);
+            totalNanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param phase 阶段
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(Phase phase, long nanos) {
+        int index = phase.ordinal();
+        histograms[index].recordValue(Math.max(0, nanos));
+        totalNanos[index].add(nanos);
+    }
+
+    /**
+     * 创建按行记录耗时的本地记录器，只能在一个线程中使用
+     *
+     * @return 记录器
+     */
+    public PhaseRecorder newRecorder() {
+        return new PhaseRecorder(this);
+    }
+
+    /**
+     * 合并记录器中一个阶段的耗时
+     */
+    void merge(Phase phase, Histogram histogram, long nanos) {
+        int index = phase.ordinal();
+        histograms[index].add(histogram);
+        totalNanos[index].add(nanos);
+    }
+
+    /**
+     * 累加处理的行数
+     *
+     * @param count 行数
+     */
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    /**
+     * 累加读取的字节数
+     *
+     * @param bytes 字节数
+     */
+    public void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * 一个工作单元开始处理
+     */
+    public void unitStarted() {
+        activeUnits.incrementAndGet();
+        firstStartNanos.accumulateAndGet(System.nanoTime(), Math::min);
+    }
+
+    /**
+     * 一个工作单元处理结束（无论成功与否）
+     */
+    public void unitFinished() {
+        lastEndNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        activeUnits.decrementAndGet();
+    }
+
+    /**
+     * 估算字符串按UTF-8编码的字节数，不实际编码
+     *
+     * @param value 字符串
+     * @return 字节数，null 为0
+     */
+    public static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // 代理对共4字节，低位代理不再计数
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        long start = firstStartNanos.get();
+        if (start == Long.MAX_VALUE) {
+            return 0;
+        }
+        long end = activeUnits.get() > 0 ? System.nanoTime() : lastEndNanos.get();
+        return Math.max(0, (end - start) / 1_000_000);
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getRows() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public int getActiveUnits() {
+        return activeUnits.get();
+    }
+
+    @Override
+    public PhaseStats getRead() {
+        return getStats(Phase.READ);
+    }
+
+    @Override
+    public PhaseStats getTransform() {
+        return getStats(Phase.TRANSFORM);
+    }
+
+    @Override
+    public PhaseStats getWrite() {
+        return getStats(Phase.WRITE);
+    }
+
+    @Override
+    public PhaseStats getCommit() {
+        return getStats(Phase.COMMIT);
+    }
+
+    /**
+     * 获取一个阶段的耗时快照，可以在记录的同时调用
+     *
+     * @param phase 阶段
+     * @return 快照
+     */
+    public PhaseStats getStats(Phase phase) {
+        int index = phase.ordinal();
+        return new PhaseStats(histograms[index].copy(), totalNanos[index].sum());
+    }
+}
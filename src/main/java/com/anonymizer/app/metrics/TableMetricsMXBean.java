@@ -0,0 +1,42 @@
+package com.anonymizer.app.metrics;
+
+/**
+ * 单个表的运行指标，运行期间注册为 com.anonymizer.app:type=TableMetrics,table=&lt;表名&gt;
+ */
+public interface TableMetricsMXBean {
+
+    String getTableName();
+
+    /**
+     * @return 已处理的行数
+     */
+    long getRows();
+
+    /**
+     * @return 已读取的待脱敏列值的大小（按UTF-8编码估算的字节数）
+     */
+    long getBytesRead();
+
+    /**
+     * @return 从第一个工作单元开始到最后一个结束（运行中为到现在）的耗时，毫秒
+     */
+    long getElapsedMillis();
+
+    /**
+     * @return 按 {@link #getElapsedMillis()} 计算的每秒处理行数
+     */
+    double getRowsPerSecond();
+
+    /**
+     * @return 正在运行的工作单元数
+     */
+    int getActiveUnits();
+
+    PhaseStats getRead();
+
+    PhaseStats getTransform();
+
+    PhaseStats getWrite();
+
+    PhaseStats getCommit();
+}
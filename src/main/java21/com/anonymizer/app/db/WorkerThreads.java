@@ -0,0 +1,56 @@
+package com.anonymizer.app.db;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 创建工作单元使用的虚拟线程（Java 21 实现，见 src/main/java 中的同名类）
+ *
+ * 虚拟线程在JDBC调用等待网络时让出载体线程，几百个工作单元只占用与CPU核数相当的载体线程。
+ */
+final class WorkerThreads {
+    /** 虚拟线程调度器的载体线程数，调度器在第一个虚拟线程启动时读取，之后修改不再生效 */
+    private static final String PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * @return 当前运行环境是否支持虚拟线程
+     */
+    static boolean isVirtualAvailable() {
+        return true;
+    }
+
+    /**
+     * 创建为每个任务启动一个虚拟线程的执行器
+     *
+     * @param namePrefix 线程名前缀
+     * @return 执行器
+     */
+    static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+
+    /**
+     * 使载体线程数不少于可能同时在驱动中等待的线程数。在JDK 21到23上，驱动在 synchronized 块中等待网络时
+     * 占住载体线程（pinning），载体线程都被占住时其他虚拟线程无法运行。
+     * 需要在创建第一个虚拟线程之前调用；启动参数中已配置时不修改
+     *
+     * @param threads 可能同时在驱动中等待的线程数
+     * @return 载体线程数，启动参数中的配置无法解析时返回0
+     */
+    static int reserveCarrierThreads(int threads) {
+        String configured = System.getProperty(PARALLELISM_PROPERTY);
+        if (configured != null) {
+            try {
+                return Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        int parallelism = Math.max(Runtime.getRuntime().availableProcessors(), threads);
+        System.setProperty(PARALLELISM_PROPERTY, String.valueOf(parallelism));
+        return parallelism;
+    }
+}
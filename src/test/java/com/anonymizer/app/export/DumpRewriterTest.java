@@ -0,0 +1,118 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.AnonymizationRule;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link DumpRewriter} 的单元测试：字面量的引号和转义、字段边界、COPY 数据行，以及无法识别的数据使运行失败
+ */
+class DumpRewriterTest {
+    /** 把值包在尖括号中，便于检查规则收到的值和写回的字面量 */
+    private static final AnonymizationRule WRAP = value -> "<" + value + ">";
+
+    private static DumpTable table(AnonymizationRule... rules) {
+        return new DumpTable("customers", rules);
+    }
+
+    @Test
+    void rewritesOnlyRuleColumns() throws IOException {
+        DumpRewriter rewriter = new DumpRewriter(true);
+        String values = " (1,'alice','a@x.com'),(2,'bob','b@x.com');\n";
+
+        String rewritten = rewriter.rewriteInsert(values, table(null, WRAP, null));
+
+        assertEquals(" (1,'<alice>','a@x.com'),(2,'<bob>','b@x.com');\n", rewritten);
+    }
+
+    @Test
+    void unescapesAndEscapesMysqlBackslashLiterals() throws IOException {
+        DumpRewriter rewriter = new DumpRewriter(true);
+        String values = " (1,'it\\'s\\nfine','a\\\\b');\n";
+
+        String rewritten = rewriter.rewriteInsert(values, table(null, WRAP, WRAP));
+
+        assertEquals(" (1,'<it\\'s\\nfine>','<a\\\\b>');\n", rewritten);
+    }
+
+    @Test
+    void keepsBackslashLiteralInStandardStrings() throws IOException {
+        DumpRewriter rewriter = new DumpRewriter(false);
+        String values = " (1,'it''s','a\\b');\n";
+
+        String rewritten = rewriter.rewriteInsert(values, table(null, WRAP, WRAP));
+
+        assertEquals(" (1,'<it''s>','<a\\b>');\n", rewritten);
+    }
+
+    @Test
+    void ignoresSeparatorsInsideQuotes() throws IOException {
+        DumpRewriter rewriter = new DumpRewriter(true);
+        String values = " ('a,(b)','c'),('d);','e');\n";
+
+        String rewritten = rewriter.rewriteInsert(values, table(null, WRAP));
+
+        assertEquals(" ('a,(b)','<c>'),('d);','<e>');\n", rewritten);
+    }
+
+    @Test
+    void keepsNullAndQuotesNumbers() throws IOException {
+        DumpRewriter rewriter = new DumpRewriter(true);
+        String values = " (1,NULL),(2,13800000000);\n";
+
+        String rewritten = rewriter.rewriteInsert(values, table(null, WRAP));
+
+        assertEquals(" (1,NULL),(2,'<13800000000>');\n", rewritten);
+    }
+
+    @Test
+    void failsOnUnsupportedLiteralWithoutLeakingIt() {
+        DumpRewriter rewriter = new DumpRewriter(true);
+        String values = " (1,UNHEX('3133383030')),(2,'bob');\n";
+
+        IOException e = assertThrows(IOException.class,
+                () -> rewriter.rewriteInsert(values, table(null, WRAP)));
+
+        assertFalse(e.getMessage().contains("3133383030"));
+    }
+
+    @Test
+    void failsOnValueCountMismatch() {
+        DumpRewriter rewriter = new DumpRewriter(true);
+
+        assertThrows(IOException.class, () -> rewriter.rewriteInsert(" (1,'alice');\n", table(null, WRAP, null)));
+    }
+
+    @Test
+    void rewritesCopyLines() throws IOException {
+        DumpRewriter rewriter = new DumpRewriter(false);
+        String lines = "1\tfoo\\tbar\n2\t\\N\n3\tback\\\\slash";
+
+        String rewritten = rewriter.rewriteCopy(lines, table(null, WRAP));
+
+        assertEquals("1\t<foo\\tbar>\n2\t\\N\n3\t<back\\\\slash>", rewritten);
+    }
+
+    @Test
+    void failsOnCopyFieldCountMismatch() {
+        DumpRewriter rewriter = new DumpRewriter(false);
+
+        assertThrows(IOException.class, () -> rewriter.rewriteCopy("1\t13800000000\textra\n", table(null, WRAP)));
+    }
+
+    @Test
+    void quotesPerDialect() {
+        StringBuilder mysql = new StringBuilder();
+        DumpRewriter.appendQuoted(mysql, "a'b\\c\n\0\u001A", true);
+        StringBuilder standard = new StringBuilder();
+        DumpRewriter.appendQuoted(standard, "a'b\\c", false);
+
+        assertEquals("'a\\'b\\\\c\\n\\0\\Z'", mysql.toString());
+        assertEquals("'a''b\\c'", standard.toString());
+    }
+}
@@ -0,0 +1,192 @@
+package com.anonymizer.app.export;
+
+import com.anonymizer.app.anonymizer.RuleResolver;
+import com.anonymizer.app.config.ConfigLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link DumpScanner} 的单元测试：语句边界与引号、窗口边界、COPY 块的结束标记，以及无法识别的语句使运行失败
+ */
+class DumpScannerTest {
+    private static DumpScanner scanner(boolean backslashEscapes) {
+        Properties properties = new Properties();
+        properties.setProperty("tables", "customers");
+        properties.setProperty("customers.columns", "mobile");
+        properties.setProperty("column.type.customers.mobile", "MOBILE");
+        ConfigLoader configLoader = new ConfigLoader(properties);
+        return new DumpScanner(backslashEscapes, new RuleResolver(configLoader), configLoader.getTables());
+    }
+
+    private static ByteBuffer window(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<DumpSegment> scanAll(DumpScanner scanner, String text) throws IOException {
+        ByteBuffer window = window(text);
+        List<DumpSegment> segments = scanner.scan(window, window.limit(), true);
+        assertEquals(window.limit(), scanner.getConsumed());
+        return segments;
+    }
+
+    private static String text(String dump, DumpSegment segment) {
+        return new String(dump.getBytes(StandardCharsets.UTF_8), segment.start, segment.length(),
+                StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void findsInsertWithColumnList() throws IOException {
+        String dump = "SET NAMES utf8mb4;\n"
+                + "INSERT INTO `customers` (`id`, `mobile`) VALUES (1,'13800000000');\n";
+
+        List<DumpSegment> segments = scanAll(scanner(true), dump);
+
+        assertEquals(2, segments.size());
+        assertEquals(DumpSegment.Kind.PASS, segments.get(0).kind);
+        DumpSegment insert = segments.get(1);
+        assertEquals(DumpSegment.Kind.INSERT, insert.kind);
+        assertEquals("customers", insert.table.getName());
+        assertEquals(2, insert.table.getColumnCount());
+        assertNull(insert.table.getRule(0));
+        assertEquals(" (1,'13800000000');\n", text(dump, insert).substring(insert.headerLength));
+    }
+
+    @Test
+    void ignoresSemicolonsInsideMysqlLiterals() throws IOException {
+        String dump = "INSERT INTO customers (id, mobile) VALUES (1,'a\\';\nb;');\nSELECT 1;\n";
+
+        List<DumpSegment> segments = scanAll(scanner(true), dump);
+
+        assertEquals(DumpSegment.Kind.INSERT, segments.get(0).kind);
+        assertEquals(dump.indexOf("SELECT"), segments.get(0).end);
+        assertEquals(DumpSegment.Kind.PASS, segments.get(1).kind);
+    }
+
+    @Test
+    void ignoresSemicolonsInsideStandardLiterals() throws IOException {
+        String dump = "INSERT INTO public.customers (id, mobile) VALUES (1,'a\\'';\nb');\nSELECT 1;\n";
+
+        List<DumpSegment> segments = scanAll(scanner(false), dump);
+
+        assertEquals(DumpSegment.Kind.INSERT, segments.get(0).kind);
+        assertEquals(dump.indexOf("SELECT"), segments.get(0).end);
+    }
+
+    @Test
+    void leavesUnfinishedStatementForNextWindow() throws IOException {
+        String first = "SET NAMES utf8mb4;\n";
+        String dump = first + "INSERT INTO customers (id, mobile) VALUES (1,'a;\n";
+        DumpScanner scanner = scanner(true);
+
+        List<DumpSegment> segments = scanner.scan(window(dump), dump.length(), false);
+
+        assertEquals(1, segments.size());
+        assertEquals(first.length(), scanner.getConsumed());
+
+        String rest = dump.substring(first.length()) + "b');\n";
+        segments = scanner.scan(window(rest), rest.length(), true);
+        assertEquals(1, segments.size());
+        assertEquals(DumpSegment.Kind.INSERT, segments.get(0).kind);
+        assertEquals(rest.length(), scanner.getConsumed());
+    }
+
+    @Test
+    void splitsCopyBlockAtTerminator() throws IOException {
+        String header = "COPY public.customers (id, mobile) FROM stdin;\n";
+        String rows = "1\t13800000000\n2\t\\N\n";
+        String dump = header + rows + "\\.\n\nSELECT 1;\n";
+
+        List<DumpSegment> segments = scanAll(scanner(false), dump);
+
+        assertEquals(3, segments.size());
+        assertEquals(DumpSegment.Kind.PASS, segments.get(0).kind);
+        assertEquals(DumpSegment.Kind.COPY, segments.get(1).kind);
+        assertEquals(rows, text(dump, segments.get(1)));
+        assertEquals(DumpSegment.Kind.PASS, segments.get(2).kind);
+        assertEquals(header.length() + rows.length(), segments.get(2).start);
+    }
+
+    @Test
+    void keepsCopyStateAcrossWindows() throws IOException {
+        DumpScanner scanner = scanner(false);
+        scanAll(scanner, "COPY customers (id, mobile) FROM stdin;\n1\t13800000000\n");
+
+        List<DumpSegment> segments = scanAll(scanner, "2\t13900000000\n\\.\r\nINSERT INTO other VALUES (1);\n");
+
+        assertEquals(2, segments.size());
+        assertEquals(DumpSegment.Kind.COPY, segments.get(0).kind);
+        assertEquals("2\t13900000000\n".length(), segments.get(0).end);
+        assertEquals(DumpSegment.Kind.PASS, segments.get(1).kind);
+    }
+
+    @Test
+    void passesUnconfiguredTablesThrough() throws IOException {
+        String dump = "INSERT INTO orders VALUES (1,'x');\nCOPY orders FROM stdin;\n1\tx\n\\.\n";
+
+        List<DumpSegment> segments = scanAll(scanner(true), dump);
+
+        assertEquals(1, segments.size());
+        assertEquals(DumpSegment.Kind.PASS, segments.get(0).kind);
+    }
+
+    @Test
+    void usesCreateTableColumnsForInsertWithoutColumnList() throws IOException {
+        String dump = "CREATE TABLE `customers` (\n"
+                + "  `id` int NOT NULL,\n"
+                + "  `mobile` varchar(20) DEFAULT NULL,\n"
+                + "  PRIMARY KEY (`id`)\n"
+                + ") ENGINE=InnoDB;\n"
+                + "INSERT INTO `customers` VALUES (1,'13800000000');\n";
+
+        List<DumpSegment> segments = scanAll(scanner(true), dump);
+
+        DumpSegment insert = segments.get(1);
+        assertEquals(DumpSegment.Kind.INSERT, insert.kind);
+        assertEquals(2, insert.table.getColumnCount());
+        assertNull(insert.table.getRule(0));
+    }
+
+    @Test
+    void failsOnInsertWithoutColumnListOrCreateTable() {
+        assertThrows(IOException.class,
+                () -> scanAll(scanner(true), "INSERT INTO `customers` VALUES (1,'13800000000');\n"));
+    }
+
+    @Test
+    void failsOnInsertHeaderLongerThanLimit() {
+        StringBuilder dump = new StringBuilder("INSERT INTO customers (mobile");
+        for (int i = 0; i < 10000; i++) {
+            dump.append(", padding_column_").append(i);
+        }
+        dump.append(") VALUES ('13800000000');\n");
+
+        assertThrows(IOException.class, () -> scanAll(scanner(true), dump.toString()));
+    }
+
+    @Test
+    void failsOnInsertSelect() {
+        assertThrows(IOException.class,
+                () -> scanAll(scanner(true), "INSERT INTO customers SELECT * FROM staging;\n"));
+    }
+
+    @Test
+    void failsOnCopyWithoutColumnList() {
+        assertThrows(IOException.class,
+                () -> scanAll(scanner(false), "COPY public.customers FROM stdin;\n1\t13800000000\n\\.\n"));
+    }
+
+    @Test
+    void failsWhenConfiguredColumnIsMissing() {
+        assertThrows(IOException.class,
+                () -> scanAll(scanner(true), "INSERT INTO customers (id, phone) VALUES (1,'13800000000');\n"));
+    }
+}